@@ -0,0 +1,123 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * The {@link RenderEvents} as JFR events. Kept out of the default build, as it needs jdk.jfr, and loaded by name.
+ */
+final class JfrRenderEvents extends RenderEvents
+{
+    private final EventType tileType = EventType.getEventType(TileEvent.class);
+    
+    @Override
+    boolean tileEnabled()
+    {
+        return tileType.isEnabled();
+    }
+    
+    @Override
+    Object startTile()
+    {
+        TileEvent event = new TileEvent();
+        if (!event.isEnabled())
+            return null;
+        event.begin();
+        return event;
+    }
+    
+    @Override
+    void endTile(Object started, String view, int x, int y, int width, int height, int step, int pixels, long rays,
+                 long intersectionTests)
+    {
+        TileEvent event = (TileEvent) started;
+        if (!event.shouldCommit())
+            return;
+        event.view = view;
+        event.x = x;
+        event.y = y;
+        event.width = width;
+        event.height = height;
+        event.step = step;
+        event.pixels = pixels;
+        event.rays = rays;
+        event.intersectionTests = intersectionTests;
+        event.commit();
+    }
+    
+    @Override
+    Object startPhase()
+    {
+        PhaseEvent event = new PhaseEvent();
+        if (!event.isEnabled())
+            return null;
+        event.begin();
+        return event;
+    }
+    
+    @Override
+    void endPhase(Object started, String phase, int views, long rays)
+    {
+        PhaseEvent event = (PhaseEvent) started;
+        if (!event.shouldCommit())
+            return;
+        event.phase = phase;
+        event.views = views;
+        event.rays = rays;
+        event.commit();
+    }
+    
+    @Name("raytracer.RenderTile")
+    @Label("Render Tile")
+    @Category("Ray Tracer")
+    @Description("Rendering of one tile of an image, in one pass")
+    static class TileEvent extends Event
+    {
+        @Label("View")
+        String view;
+        
+        @Label("X")
+        int x;
+        
+        @Label("Y")
+        int y;
+        
+        @Label("Width")
+        int width;
+        
+        @Label("Height")
+        int height;
+        
+        @Label("Pass Step")
+        @Description("Pixels per preview pixel of the pass, 1 for the final pass")
+        int step;
+        
+        @Label("Pixels")
+        int pixels;
+        
+        @Label("Rays")
+        long rays;
+        
+        @Label("Intersection Tests")
+        long intersectionTests;
+    }
+    
+    @Name("raytracer.RenderPhase")
+    @Label("Render Phase")
+    @Category("Ray Tracer")
+    @Description("A phase of rendering all the views of a scene: shadow cache sampling, a pass, denoising or saving")
+    static class PhaseEvent extends Event
+    {
+        @Label("Phase")
+        String phase;
+        
+        @Label("Views")
+        int views;
+        
+        @Label("Rays")
+        @Description("Rays cast by all threads during the phase")
+        long rays;
+    }
+}
@@ -0,0 +1,22 @@
+/**
+ * Spatial index over the shapes of a scene, answering the ray queries of {@link Scene}
+ */
+public interface Accelerator
+{
+    /**
+     * Calculates for a given point and (normalized) direction the closest shape it hits
+     */
+    Intersection findClosestIntersection(Vec3 origin, Vec3 direction);
+    
+    /**
+     * Visits every shape that the ray might hit within maxDistance of the origin, each shape at most once, until
+     * the visitor returns false. Shapes are not necessarily visited in order of distance, and the visitor should
+     * intersect them itself.
+     */
+    void visitShapes(Vec3 origin, Vec3 direction, double maxDistance, ShapeVisitor visitor);
+    
+    /**
+     * Rough estimate of the memory held by the index itself, not including the shapes
+     */
+    long estimatedSizeInBytes();
+}
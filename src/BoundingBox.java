@@ -0,0 +1,54 @@
+/**
+ * Axis aligned bounding box
+ */
+public class BoundingBox
+{
+    public final Vec3 min;
+    public final Vec3 max;
+    
+    public BoundingBox(Vec3 min, Vec3 max)
+    {
+        this.min = min;
+        this.max = max;
+    }
+    
+    public static BoundingBox of(Vec3... points)
+    {
+        double minX = Double.POSITIVE_INFINITY, minY = Double.POSITIVE_INFINITY, minZ = Double.POSITIVE_INFINITY;
+        double maxX = Double.NEGATIVE_INFINITY, maxY = Double.NEGATIVE_INFINITY, maxZ = Double.NEGATIVE_INFINITY;
+        for (Vec3 p : points)
+        {
+            minX = Math.min(minX, p.x);
+            minY = Math.min(minY, p.y);
+            minZ = Math.min(minZ, p.z);
+            maxX = Math.max(maxX, p.x);
+            maxY = Math.max(maxY, p.y);
+            maxZ = Math.max(maxZ, p.z);
+        }
+        return new BoundingBox(new Vec3(minX, minY, minZ), new Vec3(maxX, maxY, maxZ));
+    }
+    
+    public BoundingBox union(BoundingBox other)
+    {
+        return of(min, max, other.min, other.max);
+    }
+    
+    /**
+     * @return the box grown by margin on every side
+     */
+    public BoundingBox expandedBy(double margin)
+    {
+        Vec3 m = new Vec3(margin, margin, margin);
+        return new BoundingBox(min.minus(m), max.plus(m));
+    }
+    
+    public Vec3 size()
+    {
+        return max.minus(min);
+    }
+    
+    public String toString()
+    {
+        return "BoundingBox(" + min + ", " + max + ")";
+    }
+}
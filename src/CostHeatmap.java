@@ -0,0 +1,104 @@
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Per pixel cost of rendering an image - nanoseconds, rays cast and intersection tests - saved as false color
+ * heatmaps, to show which parts of the image are expensive (e.g. chains of transparent shadow casters, or deep
+ * mirror recursion).
+ * <p>
+ * Each pixel is recorded by the thread that renders it. Costs are mapped linearly from black (free) through blue,
+ * red and yellow to white at the 99.5th percentile, so a few outliers don't wash out the rest.
+ */
+public class CostHeatmap
+{
+    private static final double SCALE_PERCENTILE = 0.995;
+    private static final int[][] PALETTE = { // RGB stops, evenly spaced from no cost to the scale maximum
+            {0, 0, 0}, {40, 20, 130}, {190, 30, 90}, {250, 140, 20}, {250, 250, 100}, {255, 255, 255}};
+
+    private final int width;
+    private final int height;
+    private final long[] nanos;
+    private final int[] rays;
+    private final int[] intersectionTests;
+
+    public CostHeatmap(int width, int height)
+    {
+        this.width = width;
+        this.height = height;
+        nanos = new long[width * height];
+        rays = new int[width * height];
+        intersectionTests = new int[width * height];
+    }
+
+    public void record(int x, int y, long pixelNanos, long pixelRays, long pixelIntersectionTests)
+    {
+        int pixelIndex = y * width + x;
+        nanos[pixelIndex] = pixelNanos;
+        rays[pixelIndex] = (int) Math.min(Integer.MAX_VALUE, pixelRays);
+        intersectionTests[pixelIndex] = (int) Math.min(Integer.MAX_VALUE, pixelIntersectionTests);
+    }
+
+    /**
+     * Saves a heatmap of each cost, to fileName with _heatmap_time, _heatmap_rays and _heatmap_tests added before the
+     * extension
+     */
+    public void save(String fileName)
+    {
+        double[] values = new double[nanos.length];
+        for (int i = 0; i < values.length; i++)
+            values[i] = nanos[i] / 1000.0;
+        save(values, RayTracer.withSuffix(fileName, "_heatmap_time"), "microseconds");
+        for (int i = 0; i < values.length; i++)
+            values[i] = rays[i];
+        save(values, RayTracer.withSuffix(fileName, "_heatmap_rays"), "rays");
+        for (int i = 0; i < values.length; i++)
+            values[i] = intersectionTests[i];
+        save(values, RayTracer.withSuffix(fileName, "_heatmap_tests"), "intersection tests");
+    }
+
+    private void save(double[] values, String fileName, String unit)
+    {
+        double[] sorted = values.clone();
+        Arrays.sort(sorted);
+        double total = 0;
+        for (double value : sorted)
+            total += value;
+        double scale = sorted[Math.min(sorted.length - 1, (int) (sorted.length * SCALE_PERCENTILE))];
+        if (scale <= 0)
+            scale = Math.max(1, sorted[sorted.length - 1]);
+
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < height; y++)
+            for (int x = 0; x < width; x++)
+                image.setRGB(x, y, falseColor(values[y * width + x] / scale));
+        try
+        {
+            ImageIO.write(image, "png", new File(fileName));
+        }
+        catch (IOException e)
+        {
+            System.out.println("ERROR SAVING FILE: " + e.getMessage());
+            return;
+        }
+        System.out.println(String.format("Saved heatmap:    %s (mean %.1f, 99.5%% below %.1f, max %.1f %s per pixel)",
+                fileName, total / values.length, scale, sorted[sorted.length - 1], unit));
+    }
+
+    /**
+     * @param cost 0 for no cost, 1 for the scale maximum
+     */
+    private static int falseColor(double cost)
+    {
+        double position = Math.max(0, Math.min(1, cost)) * (PALETTE.length - 1);
+        int stop = Math.min(PALETTE.length - 2, (int) position);
+        double fraction = position - stop;
+        int rgb = 0;
+        for (int channel = 0; channel < 3; channel++)
+            rgb = (rgb << 8) | (int) Math.round(PALETTE[stop][channel]
+                    + fraction * (PALETTE[stop + 1][channel] - PALETTE[stop][channel]));
+        return rgb;
+    }
+}
@@ -0,0 +1,175 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Edge-avoiding à-trous wavelet filter (Dammertz et al. 2010), for the noise of soft shadows. Filters only what
+ * shadow rays add to the image: the illumination of each light at the primary hits, kept in the {@link GBuffer}.
+ * The change in illumination is then added to each pixel, weighted by the light the light brings to it unshadowed,
+ * so shading, highlights and reflections are never blurred. With super sampling, the illuminations are the mean of
+ * the sub-samples, and their change is added to all of them.
+ * <p>
+ * Illuminations only average with neighbours of the same material, a similar normal and depth, and a similar
+ * illumination, so silhouettes and shadow edges stay sharp. Illuminations are compared after a 3x3 blur (a guide, as
+ * in SVGF), which is much less noisy than a single pixel, so the comparison can be tight enough to keep penumbrae
+ * and contact shadows. Each pass uses a 5x5 kernel with holes, doubling its spacing, so a few passes cover a wide
+ * area cheaply. Rows are filtered in parallel, on the render threads.
+ */
+public class Denoiser
+{
+    private static final int PASSES = 3;
+    private static final double[] KERNEL = {1.0 / 16, 1.0 / 4, 3.0 / 8, 1.0 / 4, 1.0 / 16}; // B3 spline
+    private static final int NORMAL_POWER_SQUARINGS = 6; // weight is dot(n1, n2)^64
+    private static final double DEPTH_SIGMA = 0.02; // relative to the depth of the pixel, per pixel of distance
+    private static final double ILLUMINATION_SIGMA = 0.35; // times 1 / shadowRayCount, the step of illuminations
+    private static final double GUIDE_MINIMUM_NORMAL_DOT = 0.9;
+    
+    /**
+     * @param shadowRayCount of the render. Illuminations only average with those whose guides are within about
+     *                       ILLUMINATION_SIGMA / shadowRayCount of their own, which worked best for 2, 3 and 5 shadow
+     *                       rays, and is halved every pass, as the noise left gets weaker.
+     * @param pool render threads to filter rows on, or null to filter on this thread
+     */
+    public static void denoise(byte[] rgbData, GBuffer gBuffer, int shadowRayCount, ExecutorService pool)
+    {
+        int height = gBuffer.height;
+        float[] illuminations = gBuffer.illuminations.clone();
+        float[] filtered = new float[illuminations.length];
+        float[] guide = new float[illuminations.length];
+        
+        for (int pass = 0; pass < PASSES; pass++)
+        {
+            int step = 1 << pass;
+            double illuminationSigma = ILLUMINATION_SIGMA / shadowRayCount / step;
+            float[] in = illuminations, out = filtered;
+            List<Runnable> guideTasks = new ArrayList<>(), filterTasks = new ArrayList<>();
+            for (int y = 0; y < height; y++)
+            {
+                int row = y;
+                guideTasks.add(() -> guideRow(in, guide, gBuffer, row));
+                filterTasks.add(() -> filterRow(in, guide, out, gBuffer, row, step, illuminationSigma));
+            }
+            RayTracer.runAll(pool, guideTasks);
+            RayTracer.runAll(pool, filterTasks);
+            illuminations = filtered;
+            filtered = in;
+        }
+        
+        int lightCount = gBuffer.lightCount;
+        for (int p = 0; p < gBuffer.width * height; p++)
+        {
+            if (gBuffer.materials[p] == 0)
+                continue;
+            double changeR = 0, changeG = 0, changeB = 0;
+            for (int light = 0; light < lightCount; light++)
+            {
+                int index = p * lightCount + light;
+                double change = illuminations[index] - gBuffer.illuminations[index];
+                changeR += change * gBuffer.lightColors[index * 3];
+                changeG += change * gBuffer.lightColors[index * 3 + 1];
+                changeB += change * gBuffer.lightColors[index * 3 + 2];
+            }
+            rgbData[p * 3] = plus(rgbData[p * 3], changeR);
+            rgbData[p * 3 + 1] = plus(rgbData[p * 3 + 1], changeG);
+            rgbData[p * 3 + 2] = plus(rgbData[p * 3 + 2], changeB);
+        }
+    }
+    
+    /**
+     * @return the channel with change (in [0,1] units) added, clamped and rounded to the nearest level
+     */
+    private static byte plus(byte channel, double change)
+    {
+        double value = (channel & 0xFF) / 255.0 + change;
+        return (byte) Math.round(255 * Math.max(0, Math.min(1, value)));
+    }
+    
+    /**
+     * Blurs the illuminations of row y over the 3x3 pixels around each, of the same material and about the same normal
+     */
+    private static void guideRow(float[] in, float[] guide, GBuffer gBuffer, int y)
+    {
+        int width = gBuffer.width, height = gBuffer.height, lightCount = gBuffer.lightCount;
+        for (int x = 0; x < width; x++)
+        {
+            int p = y * width + x;
+            int material = gBuffer.materials[p];
+            if (material == 0)
+                continue;
+            for (int light = 0; light < lightCount; light++)
+                guide[p * lightCount + light] = 0;
+            int count = 0;
+            for (int qy = Math.max(0, y - 1); qy <= Math.min(height - 1, y + 1); qy++)
+                for (int qx = Math.max(0, x - 1); qx <= Math.min(width - 1, x + 1); qx++)
+                {
+                    int q = qy * width + qx;
+                    if (gBuffer.materials[q] != material || gBuffer.normals[p * 3] * gBuffer.normals[q * 3]
+                            + gBuffer.normals[p * 3 + 1] * gBuffer.normals[q * 3 + 1]
+                            + gBuffer.normals[p * 3 + 2] * gBuffer.normals[q * 3 + 2] < GUIDE_MINIMUM_NORMAL_DOT)
+                        continue;
+                    for (int light = 0; light < lightCount; light++)
+                        guide[p * lightCount + light] += in[q * lightCount + light];
+                    count++;
+                }
+            // count > 0, as the pixel itself always counts
+            for (int light = 0; light < lightCount; light++)
+                guide[p * lightCount + light] /= count;
+        }
+    }
+    
+    private static void filterRow(float[] in, float[] guide, float[] out, GBuffer gBuffer, int y, int step,
+                                  double illuminationSigma)
+    {
+        int width = gBuffer.width, height = gBuffer.height, lightCount = gBuffer.lightCount;
+        double invIlluminationVariance = 1 / (illuminationSigma * illuminationSigma);
+        double[] sums = new double[lightCount], sumWeights = new double[lightCount];
+        for (int x = 0; x < width; x++)
+        {
+            int p = y * width + x;
+            int material = gBuffer.materials[p];
+            if (material == 0)
+                continue; // nothing lit
+            float depth = gBuffer.depths[p];
+            double depthScale = 1 / (DEPTH_SIGMA * depth * step + 1e-6);
+            for (int light = 0; light < lightCount; light++)
+                sums[light] = sumWeights[light] = 0;
+            
+            for (int j = -2; j <= 2; j++)
+            {
+                int qy = y + j * step;
+                if (qy < 0 || qy >= height)
+                    continue;
+                for (int i = -2; i <= 2; i++)
+                {
+                    int qx = x + i * step;
+                    if (qx < 0 || qx >= width)
+                        continue;
+                    int q = qy * width + qx;
+                    if (gBuffer.materials[q] != material)
+                        continue;
+                    
+                    double normalDot = gBuffer.normals[p * 3] * gBuffer.normals[q * 3]
+                            + gBuffer.normals[p * 3 + 1] * gBuffer.normals[q * 3 + 1]
+                            + gBuffer.normals[p * 3 + 2] * gBuffer.normals[q * 3 + 2];
+                    if (normalDot <= 0)
+                        continue;
+                    for (int k = 0; k < NORMAL_POWER_SQUARINGS; k++)
+                        normalDot *= normalDot;
+                    double weight = KERNEL[i + 2] * KERNEL[j + 2] * normalDot
+                            * Math.exp(-Math.abs(gBuffer.depths[q] - depth) * depthScale);
+                    
+                    for (int light = 0; light < lightCount; light++)
+                    {
+                        double difference = guide[q * lightCount + light] - guide[p * lightCount + light];
+                        double lightWeight = weight * Math.exp(-difference * difference * invIlluminationVariance);
+                        sums[light] += lightWeight * in[q * lightCount + light];
+                        sumWeights[light] += lightWeight;
+                    }
+                }
+            }
+            // sumWeights > 0, as the pixel itself always counts
+            for (int light = 0; light < lightCount; light++)
+                out[p * lightCount + light] = (float) (sums[light] / sumWeights[light]);
+        }
+    }
+}
@@ -0,0 +1,59 @@
+/**
+ * Full 360° x 180° panorama around the camera position, in equirectangular projection: x is longitude (the camera
+ * forward direction in the middle of the image) and y is latitude. Best rendered at a 2:1 aspect ratio.
+ */
+public class EquirectangularView implements View
+{
+    private final Vec3 position;
+    private final Vec3 forward;
+    private final Vec3 up;
+    private final Vec3 right;
+    private final int width;
+    private final int height;
+    
+    public EquirectangularView(Camera camera, int width, int height)
+    {
+        this.position = camera.position;
+        this.forward = camera.forward;
+        this.up = camera.up;
+        this.right = camera.right;
+        this.width = width;
+        this.height = height;
+    }
+    
+    @Override
+    public String getName()
+    {
+        return "panorama";
+    }
+    
+    @Override
+    public int getWidth()
+    {
+        return width;
+    }
+    
+    @Override
+    public int getHeight()
+    {
+        return height;
+    }
+    
+    @Override
+    public Vec3 getOrigin()
+    {
+        return position;
+    }
+    
+    @Override
+    public Vec3 getDirection(double x, double y)
+    {
+        double longitude = (x / width - 0.5) * 2 * Math.PI;
+        double latitude = (0.5 - y / height) * Math.PI;
+        double horizontal = Math.cos(latitude);
+        return forward.scaledBy(horizontal * Math.cos(longitude))
+                .plus(right.scaledBy(horizontal * Math.sin(longitude)))
+                .plus(up.scaledBy(Math.sin(latitude)))
+                .normalized();
+    }
+}
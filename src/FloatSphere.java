@@ -0,0 +1,85 @@
+/**
+ * Single precision {@link Sphere}: stores its geometry as floats, inline, and intersects rays in float arithmetic.
+ * Hits the same as a Sphere, up to float precision.
+ */
+public class FloatSphere extends Shape
+{
+    private final float centerX, centerY, centerZ;
+    private final float radius;
+    private final float radiusSquared;
+
+    public FloatSphere(Vec3 center, double radius, int materialIndex)
+    {
+        super(materialIndex);
+        this.centerX = (float) center.x;
+        this.centerY = (float) center.y;
+        this.centerZ = (float) center.z;
+        this.radius = (float) radius;
+        this.radiusSquared = this.radius * this.radius;
+    }
+
+    public String toString()
+    {
+        return "FloatSphere((" + centerX + ", " + centerY + ", " + centerZ + "), " + radius + ", " + materialIndex
+                + ")";
+    }
+
+    @Override
+    public Intersection findRayIntersection(Vec3 origin, Vec3 direction, boolean shadowCheck)
+    {
+        float directionX = (float) direction.x, directionY = (float) direction.y, directionZ = (float) direction.z;
+        float toCenterX = centerX - (float) origin.x;
+        float toCenterY = centerY - (float) origin.y;
+        float toCenterZ = centerZ - (float) origin.z;
+        float projectionLength = toCenterX * directionX + toCenterY * directionY + toCenterZ * directionZ;
+        if (projectionLength < 0)
+            return null; // intersection is "behind" ray
+
+        // Distance of the ray from the center, measured directly rather than as the difference of two squares, which
+        // loses most of the float precision for rays from far away
+        float offRayX = toCenterX - projectionLength * directionX;
+        float offRayY = toCenterY - projectionLength * directionY;
+        float offRayZ = toCenterZ - projectionLength * directionZ;
+        float offRaySquared = offRayX * offRayX + offRayY * offRayY + offRayZ * offRayZ;
+        if (offRaySquared > radiusSquared)
+            return null; // no intersection at all
+        if (toCenterX * toCenterX + toCenterY * toCenterY + toCenterZ * toCenterZ < radiusSquared)
+            // point is inside sphere
+            if (shadowCheck)
+                return new Intersection(origin, new Vec3(-toCenterX, -toCenterY, -toCenterZ), direction,
+                        materialIndex);
+            else
+                return null;
+
+        float t = projectionLength - (float) Math.sqrt(radiusSquared - offRaySquared);
+        float normalX = (float) origin.x + t * directionX - centerX;
+        float normalY = (float) origin.y + t * directionY - centerY;
+        float normalZ = (float) origin.z + t * directionZ - centerZ;
+        // position snapped onto the sphere, see Shape.findRayIntersection
+        float scale = radius / (float) Math.sqrt(normalX * normalX + normalY * normalY + normalZ * normalZ);
+        normalX *= scale;
+        normalY *= scale;
+        normalZ *= scale;
+        return new Intersection(new Vec3(centerX + normalX, centerY + normalY, centerZ + normalZ),
+                new Vec3(normalX, normalY, normalZ), direction, materialIndex);
+    }
+
+    @Override
+    public BoundingBox getBoundingBox()
+    {
+        return new BoundingBox(new Vec3(centerX - radius, centerY - radius, centerZ - radius),
+                new Vec3(centerX + radius, centerY + radius, centerZ + radius));
+    }
+
+    @Override
+    public long estimatedSizeInBytes()
+    {
+        return 40;
+    }
+
+    @Override
+    public Shape toSinglePrecision()
+    {
+        return this;
+    }
+}
@@ -0,0 +1,95 @@
+/**
+ * Single precision {@link Triangle}: stores a vertex, two edges and the normal as floats, inline, and intersects
+ * rays in float arithmetic (Möller-Trumbore). Hits the same as a Triangle, up to float precision - including being
+ * seen only from the side its vertices wind counterclockwise around, and not at grazing angles.
+ */
+public class FloatTriangle extends Shape
+{
+    private static final float MINIMUM_DIRECTION_DOT_NORMAL = 0.01f; // as in Plane
+
+    private final float vertexX, vertexY, vertexZ;
+    private final float edge1X, edge1Y, edge1Z; // from the vertex to the second vertex
+    private final float edge2X, edge2Y, edge2Z; // from the vertex to the third vertex
+    private final float normalX, normalY, normalZ; // normalized, of the front side
+
+    public FloatTriangle(Vec3 vertex1, Vec3 vertex2, Vec3 vertex3, int materialIndex)
+    {
+        super(materialIndex);
+        vertexX = (float) vertex1.x;
+        vertexY = (float) vertex1.y;
+        vertexZ = (float) vertex1.z;
+        edge1X = (float) vertex2.x - vertexX;
+        edge1Y = (float) vertex2.y - vertexY;
+        edge1Z = (float) vertex2.z - vertexZ;
+        edge2X = (float) vertex3.x - vertexX;
+        edge2Y = (float) vertex3.y - vertexY;
+        edge2Z = (float) vertex3.z - vertexZ;
+        Vec3 normal = new Vec3(edge1X, edge1Y, edge1Z).cross(new Vec3(edge2X, edge2Y, edge2Z)).normalized();
+        normalX = (float) normal.x;
+        normalY = (float) normal.y;
+        normalZ = (float) normal.z;
+    }
+
+    public String toString()
+    {
+        return "FloatTriangle((" + vertexX + ", " + vertexY + ", " + vertexZ + "), (" + (vertexX + edge1X) + ", "
+                + (vertexY + edge1Y) + ", " + (vertexZ + edge1Z) + "), (" + (vertexX + edge2X) + ", "
+                + (vertexY + edge2Y) + ", " + (vertexZ + edge2Z) + "), " + materialIndex + ")";
+    }
+
+    @Override
+    public Intersection findRayIntersection(Vec3 origin, Vec3 direction, boolean shadowCheck)
+    {
+        float directionX = (float) direction.x, directionY = (float) direction.y, directionZ = (float) direction.z;
+        float directionDotNormal = directionX * normalX + directionY * normalY + directionZ * normalZ;
+        if (directionDotNormal > -MINIMUM_DIRECTION_DOT_NORMAL)
+            return null; // back side, or parallel to ray
+
+        float pX = directionY * edge2Z - directionZ * edge2Y;
+        float pY = directionZ * edge2X - directionX * edge2Z;
+        float pZ = directionX * edge2Y - directionY * edge2X;
+        float determinant = edge1X * pX + edge1Y * pY + edge1Z * pZ;
+        float toOriginX = (float) origin.x - vertexX;
+        float toOriginY = (float) origin.y - vertexY;
+        float toOriginZ = (float) origin.z - vertexZ;
+        float u = toOriginX * pX + toOriginY * pY + toOriginZ * pZ;
+        if (u < 0 || u > determinant)
+            return null;
+        float qX = toOriginY * edge1Z - toOriginZ * edge1Y;
+        float qY = toOriginZ * edge1X - toOriginX * edge1Z;
+        float qZ = toOriginX * edge1Y - toOriginY * edge1X;
+        float v = directionX * qX + directionY * qY + directionZ * qZ;
+        if (v < 0 || u + v > determinant)
+            return null;
+        float t = edge2X * qX + edge2Y * qY + edge2Z * qZ;
+        if (t <= 0)
+            return null; // triangle is behind origin
+
+        // position from the barycentric coordinates, see Shape.findRayIntersection
+        u /= determinant;
+        v /= determinant;
+        Vec3 position = new Vec3(vertexX + u * edge1X + v * edge2X, vertexY + u * edge1Y + v * edge2Y,
+                vertexZ + u * edge1Z + v * edge2Z);
+        return new Intersection(position, new Vec3(normalX, normalY, normalZ), direction, materialIndex);
+    }
+
+    @Override
+    public BoundingBox getBoundingBox()
+    {
+        return BoundingBox.of(new Vec3[]{new Vec3(vertexX, vertexY, vertexZ),
+                new Vec3(vertexX + edge1X, vertexY + edge1Y, vertexZ + edge1Z),
+                new Vec3(vertexX + edge2X, vertexY + edge2Y, vertexZ + edge2Z)});
+    }
+
+    @Override
+    public long estimatedSizeInBytes()
+    {
+        return 64;
+    }
+
+    @Override
+    public Shape toSinglePrecision()
+    {
+        return this;
+    }
+}
@@ -0,0 +1,79 @@
+/**
+ * Per pixel geometry of the primary hits - normal, depth and material - used to guide image space filters.
+ * Pixels whose primary ray hit nothing have material 0.
+ * <p>
+ * Also keeps the soft shadows of each primary hit apart from its shading: the illumination of each light (the
+ * fraction its shadow rays let through) and the light it brings to the pixel when not shadowed. A filter can then
+ * smooth shadow noise alone. With super sampling, the geometry is that of the first sub-sample, and the lighting
+ * that of all the sub-samples that hit something.
+ */
+public class GBuffer
+{
+    public final int width;
+    public final int height;
+    public final int lightCount;
+    public final float[] normals; // x, y, z per pixel
+    public final float[] depths;
+    public final int[] materials;
+    public final float[] illuminations; // per light, per pixel: mean of the sub-samples
+    public final float[] lightColors; // r, g, b per light, per pixel: sum of the sub-samples, weighted by their share
+    private final float[] coverage; // per pixel: share of the sub-samples so far
+    
+    public GBuffer(int width, int height, int lightCount)
+    {
+        this.width = width;
+        this.height = height;
+        this.lightCount = lightCount;
+        normals = new float[width * height * 3];
+        depths = new float[width * height];
+        materials = new int[width * height];
+        illuminations = new float[width * height * lightCount];
+        lightColors = new float[width * height * lightCount * 3];
+        coverage = new float[width * height];
+    }
+    
+    /**
+     * Records the geometry of the primary hit of pixel (x, y), or of its first sub-sample, and clears its lighting
+     */
+    public void record(int x, int y, Vec3 rayOrigin, Intersection hit)
+    {
+        int pixel = y * width + x;
+        coverage[pixel] = 0;
+        for (int index = pixel * lightCount; index < (pixel + 1) * lightCount; index++)
+            illuminations[index] = lightColors[index * 3] = lightColors[index * 3 + 1] = lightColors[index * 3 + 2] = 0;
+        if (hit == null)
+        {
+            depths[pixel] = Float.POSITIVE_INFINITY;
+            materials[pixel] = 0;
+            return;
+        }
+        normals[pixel * 3] = (float) hit.normal.x;
+        normals[pixel * 3 + 1] = (float) hit.normal.y;
+        normals[pixel * 3 + 2] = (float) hit.normal.z;
+        depths[pixel] = (float) hit.position.minus(rayOrigin).magnitude();
+        materials[pixel] = hit.materialIndex;
+    }
+    
+    /**
+     * Adds the lighting of a sub-sample of pixel (x, y) that hit something
+     *
+     * @param share of the pixel's color the sub-sample makes up, 1 without super sampling
+     * @param illuminations of each light at the hit, see {@link Scene#getIlluminations}
+     * @param lightColors of each light at the hit, see {@link Scene#getLightColors}
+     */
+    public void addLighting(int x, int y, double share, double[] illuminations, Color[] lightColors)
+    {
+        int pixel = y * width + x;
+        double previousCoverage = coverage[pixel];
+        coverage[pixel] += share;
+        for (int light = 0; light < lightCount; light++)
+        {
+            int index = pixel * lightCount + light;
+            this.illuminations[index] = (float) ((this.illuminations[index] * previousCoverage
+                    + illuminations[light] * share) / coverage[pixel]);
+            this.lightColors[index * 3] += (float) (lightColors[light].r * share);
+            this.lightColors[index * 3 + 1] += (float) (lightColors[light].g * share);
+            this.lightColors[index * 3 + 2] += (float) (lightColors[light].b * share);
+        }
+    }
+}
@@ -0,0 +1,109 @@
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Maps image pixels to primary rays of a pinhole {@link Camera}.
+ * <p>
+ * The image may be a crop window of the full frame: the frustum is that of the full frameWidth x frameHeight image,
+ * and only the pixels from (cropX, cropY) on are mapped.
+ */
+public class PinholeView implements View
+{
+    private final String name;
+    public final Camera camera;
+    public final int width; // of the (cropped) image
+    public final int height;
+    private final Vec3 topLeft; // screen point of the top left corner of the image
+    private final Vec3 onePixelTowardsRight;
+    private final Vec3 onePixelTowardsDown;
+
+    public PinholeView(String name, Camera camera, int frameWidth, int frameHeight, int cropX, int cropY, int width,
+                       int height)
+    {
+        this.name = name;
+        this.camera = camera;
+        this.width = width;
+        this.height = height;
+        double screenHeight = camera.screenWidth / frameWidth * frameHeight;
+        onePixelTowardsRight = camera.right.scaledBy(camera.screenWidth / frameWidth);
+        onePixelTowardsDown = camera.up.scaledBy(-screenHeight / frameHeight);
+        topLeft = camera.position
+                .plus(camera.forward.scaledBy(camera.screenDistance)) // forward by camera distance
+                .plus(camera.right.scaledBy(-camera.screenWidth / 2)) // left by half screen
+                .plus(camera.up.scaledBy(screenHeight / 2)) // up by half screen
+                .plus(onePixelTowardsRight.scaledBy(cropX))
+                .plus(onePixelTowardsDown.scaledBy(cropY));
+    }
+
+    /**
+     * Left and right eye views, from cameras eyeSeparation apart with parallel axes
+     */
+    public static List<View> stereoPair(Camera camera, double eyeSeparation, int frameWidth, int frameHeight,
+                                        int cropX, int cropY, int width, int height)
+    {
+        Vec3 halfSeparation = camera.right.scaledBy(eyeSeparation / 2);
+        Camera left = new Camera(camera.position.minus(halfSeparation),
+                camera.position.minus(halfSeparation).plus(camera.forward), camera.up,
+                camera.screenDistance, camera.screenWidth);
+        Camera right = new Camera(camera.position.plus(halfSeparation),
+                camera.position.plus(halfSeparation).plus(camera.forward), camera.up,
+                camera.screenDistance, camera.screenWidth);
+        return Arrays.asList(
+                new PinholeView("left", left, frameWidth, frameHeight, cropX, cropY, width, height),
+                new PinholeView("right", right, frameWidth, frameHeight, cropX, cropY, width, height));
+    }
+
+    /**
+     * The six 90° faces of a cube map around position, looking along the world axes.
+     * The up direction of the side faces is +y; of the +y face it is -z, and of the -y face +z.
+     */
+    public static List<View> cubeMap(Vec3 position, int size)
+    {
+        String[] names = {"posx", "negx", "posy", "negy", "posz", "negz"};
+        Vec3[] forwards = {new Vec3(1, 0, 0), new Vec3(-1, 0, 0), new Vec3(0, 1, 0),
+                new Vec3(0, -1, 0), new Vec3(0, 0, 1), new Vec3(0, 0, -1)};
+        Vec3[] ups = {new Vec3(0, 1, 0), new Vec3(0, 1, 0), new Vec3(0, 0, -1),
+                new Vec3(0, 0, 1), new Vec3(0, 1, 0), new Vec3(0, 1, 0)};
+        View[] faces = new View[6];
+        for (int i = 0; i < 6; i++)
+        {
+            // screen as wide as it is far, for a 90° field of view
+            Camera face = new Camera(position, position.plus(forwards[i]), ups[i], 1, 2);
+            faces[i] = new PinholeView(names[i], face, size, size, 0, 0, size, size);
+        }
+        return Arrays.asList(faces);
+    }
+
+    @Override
+    public String getName()
+    {
+        return name;
+    }
+
+    @Override
+    public int getWidth()
+    {
+        return width;
+    }
+
+    @Override
+    public int getHeight()
+    {
+        return height;
+    }
+
+    @Override
+    public Vec3 getOrigin()
+    {
+        return camera.position;
+    }
+
+    @Override
+    public Vec3 getDirection(double x, double y)
+    {
+        Vec3 screenPoint = topLeft
+                .plus(onePixelTowardsRight.scaledBy(x))
+                .plus(onePixelTowardsDown.scaledBy(y));
+        return (screenPoint.minus(camera.position)).normalized();
+    }
+}
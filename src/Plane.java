@@ -27,9 +27,22 @@ public class Plane extends Shape
         if (t == Double.NaN)
             return null; // plane is behind origin
         Vec3 intersection_position = origin.plus(direction.scaledBy(t));
-        if (intersection_position.minus(origin).squareMagnitude() < 0.01)
-            return null; // likely intersect with same plane twice
+        // onto the plane, see Shape.findRayIntersection
+        intersection_position = intersection_position.minus(
+                normal.scaledBy(intersection_position.dot(normal) - offset));
         Vec3 hitNormal = normal.scaledBy(-dirDotNorm);
         return new Intersection(intersection_position, hitNormal, direction, materialIndex);
     }
+    
+    @Override
+    public BoundingBox getBoundingBox()
+    {
+        return null;
+    }
+    
+    @Override
+    public long estimatedSizeInBytes()
+    {
+        return 32 + Vec3.ESTIMATED_SIZE_IN_BYTES;
+    }
 }
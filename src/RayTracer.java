@@ -3,6 +3,14 @@ import java.awt.*;
 import java.awt.color.ColorSpace;
 import java.awt.image.*;
 import java.io.*;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
 
 /**
  * Main class for ray tracing exercise.
@@ -13,19 +21,60 @@ public class RayTracer
     private int imageHeight;
     private Scene scene;
     private Camera camera;
-    private static String grayscale_string = "█▓▒@ʘo•· ";
-    private static boolean REVERSE_ASCII_BLACK_AND_WHITE = false;
+    private boolean printAsciiPreview = false;
+    private boolean denoise = false;
+    private boolean shadowCache = false;
+    private boolean preview = false;
+    private Rectangle crop = null; // part of the image to render, null for all of it
+    private String views = null; // comma separated kinds of views to render, null for the camera's own view
+    private double eyeSeparation = 0.065;
+    private int threads = Runtime.getRuntime().availableProcessors();
+    private boolean singlePrecision = false; // whatever the scene file says
+    private boolean heatmap = false;
+    private boolean printProgress = true;
     private static boolean ENABLE_SUPER_SAMPLING = false; // true will make it much slower
-    private static boolean SKIP_EVERY_SECOND_ASCII_LINE = true; // should be true unless your letters are square
+    private boolean superSampling = ENABLE_SUPER_SAMPLING;
+    
+    RayTracer()
+    {
+    }
     
     /**
-     * Runs the ray tracer. Takes scene file, output image file and optional image size as input.
+     * Creates a tracer for an already parsed scene, e.g. one shared through the {@link RenderServer} cache.
+     */
+    RayTracer(Scene scene, Camera camera, int imageWidth, int imageHeight)
+    {
+        this.scene = scene;
+        this.camera = camera;
+        this.imageWidth = imageWidth;
+        this.imageHeight = imageHeight;
+        this.printProgress = false;
+        this.threads = 1; // the server already renders one job per thread
+    }
+    
+    /**
+     * Runs the ray tracer. Takes scene file, output image file, optional image size and optional flags as input.
+     * <p>
+     * Flags:
+     * --ascii    print an ASCII thumbnail of the image so far with each progress report, and of the finished image
+     * --denoise  smooth soft shadow noise with an edge-aware filter, so fewer shadow rays are needed
+     * --shadow-cache  sample soft shadows on a sparse grid of pixels, and interpolate them where they are smooth
+     * --crop x,y,w,h  render only the w x h pixels from (x, y) on, of the full image, into an image of their own
+     * --preview  save quick 1/8, 1/4 and 1/2 resolution passes to the output file before the final image
+     * --views v1,v2,..  render several views of the scene at once, each to its own file: camera (the camera's own
+     *                   view), stereo (left and right eye), cubemap (six width x width faces) or panorama (360°
+     *                   equirectangular, best at width = 2 * height)
+     * --eye-separation d  distance between the stereo cameras, in scene units (default 0.065)
+     * --threads n  number of render threads (default one per processor)
+     * --float  store shapes in single precision, as with "acc auto float" in the scene file
+     * --heatmap  also save false color heatmaps of the time, rays and intersection tests each pixel took, next to the
+     *            image (out_heatmap_time.png, out_heatmap_rays.png and out_heatmap_tests.png)
+     * <p>
+     * Run with -XX:StartFlightRecording to record JFR events of each tile and phase, if src-jfr was compiled too, as
+     * the IDE projects do (see {@link RenderEvents}).
      */
     public static void main(String[] args)
     {
-        if (REVERSE_ASCII_BLACK_AND_WHITE)
-            grayscale_string = (new StringBuilder(grayscale_string)).reverse().toString();
-        
         try
         {
             RayTracer tracer = new RayTracer();
@@ -41,12 +90,60 @@ public class RayTracer
             String sceneFileName = args[0];
             String outputFileName = args[1];
     
-            if (args.length >= 4)
+            int argIndex = 2;
+            if (args.length >= 4 && !args[2].startsWith("--"))
             {
                 tracer.imageWidth = Integer.parseInt(args[2]);
                 tracer.imageHeight = Integer.parseInt(args[3]);
+                argIndex = 4;
             }
             
+            for (; argIndex < args.length; argIndex++)
+            {
+                switch (args[argIndex])
+                {
+                    case "--ascii":
+                        tracer.printAsciiPreview = true;
+                        break;
+                    case "--denoise":
+                        tracer.denoise = true;
+                        break;
+                    case "--shadow-cache":
+                        tracer.shadowCache = true;
+                        break;
+                    case "--crop":
+                        if (++argIndex == args.length)
+                            throw new RayTracerException("Missing crop window, expected --crop x,y,w,h");
+                        tracer.setCrop(args[argIndex]);
+                        break;
+                    case "--preview":
+                        tracer.preview = true;
+                        break;
+                    case "--views":
+                        if (++argIndex == args.length)
+                            throw new RayTracerException("Missing views, expected --views v1,v2,..");
+                        tracer.views = args[argIndex];
+                        break;
+                    case "--eye-separation":
+                        if (++argIndex == args.length)
+                            throw new RayTracerException("Missing eye separation, expected --eye-separation d");
+                        tracer.eyeSeparation = Double.parseDouble(args[argIndex]);
+                        break;
+                    case "--float":
+                        tracer.singlePrecision = true;
+                        break;
+                    case "--heatmap":
+                        tracer.heatmap = true;
+                        break;
+                    case "--threads":
+                        if (++argIndex == args.length)
+                            throw new RayTracerException("Missing thread count, expected --threads n");
+                        tracer.threads = Math.max(1, Integer.parseInt(args[argIndex]));
+                        break;
+                    default:
+                        throw new RayTracerException("Unknown option: " + args[argIndex]);
+                }
+            }
             
             tracer.parseScene(sceneFileName);
             
@@ -91,6 +188,11 @@ public class RayTracer
             return new Color(aDouble(), aDouble(), aDouble());
         }
         
+        private String aString()
+        {
+            return params[paramsIndex++];
+        }
+        
         private boolean notDone()
         {
             return paramsIndex < params.length;
@@ -100,7 +202,7 @@ public class RayTracer
     /**
      * Parses the scene file and creates the scene. Change this function so it generates the required objects.
      */
-    private void parseScene(String sceneFileName) throws RayTracerException
+    void parseScene(String sceneFileName) throws RayTracerException
     {
         scene = new Scene();
         
@@ -135,7 +237,7 @@ public class RayTracer
                         System.out.println(String.format("Parsed camera parameters (line %d)", lineNum));
                         break;
                     case "set":
-                        // bgr  	bgg  	bgb	sh_rays	rec_max SS
+                        // bgr  	bgg  	bgb	sh_rays	rec_max SS	roulette
                         scene.backgroundColor = parse.aColor();
                         scene.shadowRayCount = parse.aInt();
                         scene.maximumRecursionCount = parse.aInt();
@@ -143,8 +245,32 @@ public class RayTracer
                             scene.superSamplingLevel = parse.aInt();
                         else
                             scene.superSamplingLevel = 2;
+                        if (parse.notDone())
+                            scene.rouletteThreshold = parse.aDouble();
                         System.out.println(String.format("Parsed general settings (line %d)", lineNum));
                         break;
+                    case "acc":
+                        // type (auto, list or grid)	precision (double or float)
+                        String type = parse.aString();
+                        try
+                        {
+                            scene.acceleratorType = Scene.AcceleratorType.valueOf(type.toUpperCase());
+                        }
+                        catch (IllegalArgumentException e)
+                        {
+                            throw new RayTracerException(String.format("Unknown accelerator: %s (line %d)", type,
+                                    lineNum));
+                        }
+                        if (parse.notDone())
+                        {
+                            String precision = parse.aString();
+                            if (!precision.equals("double") && !precision.equals("float"))
+                                throw new RayTracerException(String.format("Unknown precision: %s (line %d)",
+                                        precision, lineNum));
+                            scene.singlePrecision = precision.equals("float");
+                        }
+                        System.out.println(String.format("Parsed accelerator settings (line %d)", lineNum));
+                        break;
                     case "mtl":
                         // dr    	dg    	db	sr   	sg   	sb 	rr   	rg  	rb	phong 	trans
                         Material m = new Material(parse.aColor(), parse.aColor(), parse.aColor(),
@@ -193,29 +319,112 @@ public class RayTracer
                 if (shape.materialIndex <= 0 || shape.materialIndex >= maxMaterialIndex)
                     throw new RayTracerException("Invalid material for shape: " + shape);
             
+            if (singlePrecision)
+                scene.singlePrecision = true;
+            scene.buildAccelerator();
+            System.out.println("Built accelerator:    " + scene.accelerator);
+            
             System.out.println("Finished parsing scene file:    " + sceneFileName);
         }
         catch (FileNotFoundException e)
         {
             e.printStackTrace();
             System.out.println("Failed to find file in working directory:   " + System.getProperty("user.dir"));
+            throw new RayTracerException("Failed to find scene file: " + sceneFileName);
         }
         catch (IOException e)
         {
             e.printStackTrace();
+            throw new RayTracerException("Failed to read scene file: " + sceneFileName);
         }
         
     }
     
+    void setDenoise(boolean denoise)
+    {
+        this.denoise = denoise;
+    }
+    
+    void setShadowCache(boolean shadowCache)
+    {
+        this.shadowCache = shadowCache;
+    }
+    
+    void setPreview(boolean preview)
+    {
+        this.preview = preview;
+    }
+    
+    /**
+     * @param crop x,y,w,h of the crop window, in pixels of the full image
+     */
+    void setCrop(String crop) throws RayTracerException
+    {
+        String[] values = crop.split(",");
+        if (values.length != 4)
+            throw new RayTracerException("Bad crop window: " + crop + ", expected x,y,w,h");
+        Rectangle window = new Rectangle(Integer.parseInt(values[0].trim()), Integer.parseInt(values[1].trim()),
+                Integer.parseInt(values[2].trim()), Integer.parseInt(values[3].trim()));
+        if (window.isEmpty() || !new Rectangle(imageWidth, imageHeight).contains(window))
+            throw new RayTracerException("Crop window " + crop + " is not inside the " + imageWidth + "x"
+                    + imageHeight + " image");
+        this.crop = window;
+    }
+    
+    /**
+     * @param views comma separated kinds of views, as in the --views option
+     */
+    void setViews(String views)
+    {
+        this.views = views;
+    }
+    
+    void setEyeSeparation(double eyeSeparation)
+    {
+        this.eyeSeparation = eyeSeparation;
+    }
+    
+    void setHeatmap(boolean heatmap)
+    {
+        this.heatmap = heatmap;
+    }
+    
+    /**
+     * @param superSampling whether to take superSamplingLevel x superSamplingLevel sub-samples per pixel, as set by
+     *                      the scene
+     */
+    void setSuperSampling(boolean superSampling)
+    {
+        this.superSampling = superSampling;
+    }
+    
+    void setThreads(int threads)
+    {
+        this.threads = Math.max(1, threads);
+    }
+    
+    Scene getScene()
+    {
+        return scene;
+    }
+    
+    Camera getCamera()
+    {
+        return camera;
+    }
+    
     /**
-     * Renders the loaded scene and saves it to the specified file location.
+     * Renders the loaded scene and saves it to the specified file location. With several views, each view's image
+     * is saved to the file name with the view name added before the extension, e.g. out_left.png.
      */
-    private void renderScene(String outputFileName)
+    void renderScene(String outputFileName) throws RayTracerException
     {
         long startTime = System.currentTimeMillis();
         
+        List<View> views = createViews();
+        
         // Create a byte array to hold the pixel data:
-        byte[] rgbData = raycastScene(camera, scene, imageWidth, imageHeight);
+        List<FrameRenderer> frames = raycastScene(views, scene, outputFileName);
         long endTime = System.currentTimeMillis();
         Long renderTime = endTime - startTime;
         
@@ -224,92 +433,465 @@ public class RayTracer
         System.out.println("Finished rendering scene in " + 0.001 * renderTime + " seconds.");
         
         // This is already implemented, and should work without adding any code.
-        saveImage(imageWidth, rgbData, outputFileName);
+        Object phase = RenderEvents.beginPhase();
+        for (FrameRenderer frame : frames)
+        {
+            String viewFileName = viewFileName(outputFileName, frame.view);
+            saveImage(frame.view.getWidth(), frame.rgbData, viewFileName);
+            System.out.println("Saved file:    " + viewFileName);
+            if (frame.heatmap != null)
+                frame.heatmap.save(viewFileName);
+        }
+        RenderEvents.commitPhase(phase, "save", frames.size(), 0);
+    }
+    
+    /**
+     * Renders the loaded scene without saving it, e.g. to measure rendering speed
+     */
+    void renderSceneWithoutSaving() throws RayTracerException
+    {
+        raycastScene(createViews(), scene, null);
+    }
+    
+    /**
+     * @return the views listed by the views option, or the camera's own view if there is none
+     */
+    private List<View> createViews() throws RayTracerException
+    {
+        int cropX = crop == null ? 0 : crop.x, cropY = crop == null ? 0 : crop.y;
+        int width = crop == null ? imageWidth : crop.width, height = crop == null ? imageHeight : crop.height;
+        if (views == null)
+            return checkSizes(Collections.singletonList(
+                    new PinholeView("", camera, imageWidth, imageHeight, cropX, cropY, width, height)));
         
-        System.out.println("Saved file:    " + outputFileName);
-    }
-    
-    private byte[] raycastScene(Camera camera, Scene scene, int pixelWidth, int pixelHeight)
-    {
-        if (scene.superSamplingLevel == 1)
-            ENABLE_SUPER_SAMPLING = false;
-        double screenHeight = camera.screenWidth / pixelWidth * pixelHeight;
-        double superSamplingFactor = 1.0 / scene.superSamplingLevel;
-        byte[] rgbData = new byte[imageWidth * imageHeight * 3];
-        Vec3 onePixelTowardsRight = camera.right.scaledBy(camera.screenWidth / pixelWidth);
-        Vec3 onePixelTowardsDown = camera.up.scaledBy(-screenHeight / pixelHeight);
-        Vec3 currentScreenPoint = camera.position
-                .plus(camera.forward.scaledBy(camera.screenDistance)) // forward by camera distance
-                .plus(camera.right.scaledBy(-camera.screenWidth / 2)) // left by half screen
-                .plus(camera.up.scaledBy(screenHeight / 2)); // up by half screen
-        currentScreenPoint = currentScreenPoint
-                .plus(onePixelTowardsRight.scaledBy(0.5))
-                .plus(onePixelTowardsDown.scaledBy(0.5));
+        List<View> result = new ArrayList<>();
+        for (String kind : views.split(","))
+        {
+            switch (kind.trim())
+            {
+                case "camera":
+                    result.add(new PinholeView("camera", camera, imageWidth, imageHeight, cropX, cropY, width,
+                            height));
+                    break;
+                case "stereo":
+                    result.addAll(PinholeView.stereoPair(camera, eyeSeparation, imageWidth, imageHeight, cropX, cropY,
+                            width, height));
+                    break;
+                case "cubemap":
+                    if (crop != null)
+                        throw new RayTracerException("Cube maps can not be cropped");
+                    result.addAll(PinholeView.cubeMap(camera.position, imageWidth));
+                    break;
+                case "panorama":
+                    if (crop != null)
+                        throw new RayTracerException("Panoramas can not be cropped");
+                    result.add(new EquirectangularView(camera, imageWidth, imageHeight));
+                    break;
+                default:
+                    throw new RayTracerException("Unknown view: " + kind + ", expected camera, stereo, cubemap or "
+                            + "panorama");
+            }
+        }
+        return checkSizes(result);
+    }
+    
+    /**
+     * @return views, if each has a positive size and its RGB data fits in a byte array
+     */
+    private static List<View> checkSizes(List<View> views) throws RayTracerException
+    {
+        for (View view : views)
+            if (view.getWidth() <= 0 || view.getHeight() <= 0
+                    || 3L * view.getWidth() * view.getHeight() > Integer.MAX_VALUE)
+                throw new RayTracerException("Image size out of range: " + view.getWidth() + "x" + view.getHeight());
+        return views;
+    }
+    
+    /**
+     * @return fileName with "_" and the view name added before the extension, or fileName for an unnamed view
+     */
+    private static String viewFileName(String fileName, View view)
+    {
+        return view.getName().isEmpty() ? fileName : withSuffix(fileName, "_" + view.getName());
+    }
+    
+    /**
+     * @return fileName with suffix added before the extension
+     */
+    static String withSuffix(String fileName, String suffix)
+    {
+        int extension = fileName.lastIndexOf('.');
+        if (extension <= Math.max(fileName.lastIndexOf('/'), fileName.lastIndexOf(File.separatorChar)))
+            return fileName + suffix;
+        return fileName.substring(0, extension) + suffix + fileName.substring(extension);
+    }
+    
+    private static final int[] PREVIEW_STEPS = {8, 4, 2, 1}; // pixels per preview pixel, per pass
+    private static final int TILE_SIZE = 32; // a multiple of every preview step, so preview blocks stay in one tile
+    
+    /**
+     * Square part of the image of a view, the unit of work of the render threads
+     */
+    private static class Tile
+    {
+        final FrameRenderer frame;
+        final int x0, y0, x1, y1; // x1 and y1 exclusive
         
-        int ascii_print_width = 78;
-        int ascii_x_skip = pixelWidth / ascii_print_width;
-        int ascii_y_skip = pixelHeight / ascii_print_width * (SKIP_EVERY_SECOND_ASCII_LINE ? 2 : 1);
+        Tile(FrameRenderer frame, int x0, int y0, int x1, int y1)
+        {
+            this.frame = frame;
+            this.x0 = x0;
+            this.y0 = y0;
+            this.x1 = x1;
+            this.y1 = y1;
+        }
+    }
+    
+    /**
+     * Renders the images of all views, on one pool of render threads. The tiles of the views are interleaved, so all
+     * views progress together and a slow view doesn't leave threads idle at the end.
+     * In preview mode, first renders passes at 1/8, 1/4 and 1/2 resolution, saving each one to the output file of
+     * its view. Every pass reuses the pixels of the one before it, so all passes together cost no more than the final
+     * one alone.
+     *
+     * @param outputFileName where to save the previews, or null not to save them
+     */
+    private List<FrameRenderer> raycastScene(List<View> views, Scene scene, String outputFileName)
+    {
+        List<FrameRenderer> frames = new ArrayList<>();
+        long totalPixels = 0;
+        for (View view : views)
+        {
+            frames.add(new FrameRenderer(view, scene));
+            totalPixels += (long) view.getWidth() * view.getHeight();
+        }
+        FrameRenderer firstFrame = frames.get(0);
+        RenderProgress progress = new RenderProgress(firstFrame.rgbData, firstFrame.view.getWidth(),
+                firstFrame.view.getHeight(), totalPixels, scene, printProgress, printAsciiPreview);
         
-        long startTime = System.currentTimeMillis();
-        //        long lastSecPrinted = 0;
-        for (int y = 0; y < pixelHeight; y++)
+        ExecutorService pool = threads > 1 ? Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "render-worker");
+            thread.setDaemon(true);
+            return thread;
+        }) : null;
+        try
         {
-            for (int x = 0; x < pixelWidth; x++)
+            progress.start();
+            
+            if (shadowCache)
+            {
+                Object phase = RenderEvents.beginPhase();
+                long startRayCount = scene.rayCount.sum();
+                List<Runnable> tasks = new ArrayList<>();
+                for (FrameRenderer frame : frames)
+                    tasks.addAll(frame.sampleShadowVisibilityCache());
+                runAll(pool, tasks);
+                RenderEvents.commitPhase(phase, "shadow cache", frames.size(), scene.rayCount.sum() - startRayCount);
+            }
+            
+            List<Tile> tiles = interleavedTiles(frames);
+            int[] steps = preview ? PREVIEW_STEPS : new int[]{1};
+            int previousStep = 0;
+            for (int step : steps)
             {
-                Color avgColor = new Color(0, 0, 0);
-                if (ENABLE_SUPER_SAMPLING)
+                Object phase = RenderEvents.beginPhase();
+                long startRayCount = scene.rayCount.sum();
+                // per pass, so tile events are recorded from the next pass of a recording started while rendering
+                boolean countWork = heatmap || RenderEvents.isTileRecorded();
+                List<Runnable> tasks = new ArrayList<>();
+                for (Tile tile : tiles)
                 {
-                    for (int xx = 0; xx < scene.superSamplingLevel; xx++)
-                        for (int yy = 0; yy < scene.superSamplingLevel; yy++)
-                        {
-                            double randomUp = Math.random(), randomRight = Math.random();
-                            Vec3 subPixelScreenPoint = currentScreenPoint
-                                    .plus(onePixelTowardsRight.scaledBy((xx + randomRight) * superSamplingFactor))
-                                    .plus(onePixelTowardsDown.scaledBy((yy + randomUp) * superSamplingFactor));
-                            Vec3 rayDirection = (subPixelScreenPoint.minus(camera.position)).normalized();
-                            Intersection intersection = scene.raycast(camera.position, rayDirection);
-                            Color color = scene.getColor(intersection, 0, 1);
-                            avgColor = avgColor.plus(color.scaledBy(superSamplingFactor * superSamplingFactor));
-                        }
+                    int tileStep = step, tilePreviousStep = previousStep;
+                    tasks.add(() -> renderTile(tile, tileStep, tilePreviousStep, countWork, progress));
+                }
+                if (countWork)
+                    WorkCounters.start();
+                try
+                {
+                    runAll(pool, tasks);
                 }
-                else
+                finally
                 {
-                    Vec3 rayDirection = (currentScreenPoint.minus(camera.position)).normalized();
-                    Intersection intersection = scene.raycast(camera.position, rayDirection);
-                    avgColor = scene.getColor(intersection, 0, 1);
+                    if (countWork)
+                        WorkCounters.stop();
                 }
-                int pixelIndex = (y * imageHeight + x) * 3;
-                rgbData[pixelIndex] = avgColor.getRed();
-                rgbData[pixelIndex + 1] = avgColor.getGreen();
-                rgbData[pixelIndex + 2] = avgColor.getBlue();
-                currentScreenPoint = currentScreenPoint.plus(onePixelTowardsRight);
-    
-                // Print ascii drawing
-                if (x % ascii_x_skip == 0 && y % ascii_y_skip == 0)
-                    System.out.print(grayscale_string.charAt(
-                            (int) (avgColor.grayscale() * grayscale_string.length() * 0.99)));
+                RenderEvents.commitPhase(phase, step == 1 ? "final pass" : "1/" + step + " resolution pass",
+                        frames.size(), scene.rayCount.sum() - startRayCount);
+                if (step > 1 && outputFileName != null)
+                    for (FrameRenderer frame : frames)
+                    {
+                        String viewFileName = viewFileName(outputFileName, frame.view);
+                        saveImage(frame.view.getWidth(), frame.rgbData, viewFileName);
+                        System.out.println("Saved 1/" + step + " resolution preview:    " + viewFileName);
+                    }
+                previousStep = step;
+            }
+            
+            progress.finish();
+            
+            if (denoise)
+            {
+                long denoiseStartTime = System.currentTimeMillis();
+                Object phase = RenderEvents.beginPhase();
+                for (FrameRenderer frame : frames)
+                    Denoiser.denoise(frame.rgbData, frame.gBuffer, scene.shadowRayCount, pool);
+                RenderEvents.commitPhase(phase, "denoise", frames.size(), 0);
+                System.out.printf("Denoised in: %s\n",
+                        GetFormattedInterval(System.currentTimeMillis() - denoiseStartTime));
             }
+        }
+        finally
+        {
+            if (pool != null)
+                pool.shutdownNow();
+        }
+        
+        long occluderCacheLookups = scene.occluderCacheLookups.sum();
+        if (occluderCacheLookups > 0)
+            System.out.printf("Shadow occluder cache: %.1f%% hits (%d of %d lookups)\n",
+                    100.0 * scene.occluderCacheHits.sum() / occluderCacheLookups, scene.occluderCacheHits.sum(),
+                    occluderCacheLookups);
+        for (FrameRenderer frame : frames)
+            if (frame.shadowVisibilityCache != null)
+                System.out.println("Shadow visibility cache" + (frame.view.getName().isEmpty() ? ""
+                        : " (" + frame.view.getName() + ")") + ": " + frame.shadowVisibilityCache);
+        return frames;
+    }
     
-            // Print ascii drawing
-            if (y % ascii_y_skip == 0)
-                System.out.println();
+    /**
+     * @return the tiles of all frames, taking turns between the frames
+     */
+    private static List<Tile> interleavedTiles(List<FrameRenderer> frames)
+    {
+        List<List<Tile>> tilesPerFrame = new ArrayList<>();
+        int maximumTiles = 0;
+        for (FrameRenderer frame : frames)
+        {
+            List<Tile> tiles = new ArrayList<>();
+            int width = frame.view.getWidth(), height = frame.view.getHeight();
+            for (int y = 0; y < height; y += TILE_SIZE)
+                for (int x = 0; x < width; x += TILE_SIZE)
+                    tiles.add(new Tile(frame, x, y, Math.min(x + TILE_SIZE, width), Math.min(y + TILE_SIZE, height)));
+            tilesPerFrame.add(tiles);
+            maximumTiles = Math.max(maximumTiles, tiles.size());
+        }
+        
+        List<Tile> interleaved = new ArrayList<>();
+        for (int i = 0; i < maximumTiles; i++)
+            for (List<Tile> tiles : tilesPerFrame)
+                if (i < tiles.size())
+                    interleaved.add(tiles.get(i));
+        return interleaved;
+    }
     
-            currentScreenPoint = currentScreenPoint.minus(onePixelTowardsRight.scaledBy(pixelWidth));
-            currentScreenPoint = currentScreenPoint.plus(onePixelTowardsDown); // top to bottom
+    /**
+     * Renders the pixels of a tile on the grid of a pass, skipping those already rendered by the previous pass
+     *
+     * @param countWork whether the {@link WorkCounters} are counting, as tile events need them
+     */
+    private static void renderTile(Tile tile, int step, int previousStep, boolean countWork, RenderProgress progress)
+    {
+        Object event = countWork ? RenderEvents.beginTile() : null;
+        WorkCounters counters = WorkCounters.current();
+        long startRays = counters.rays, startIntersectionTests = counters.intersectionTests;
+        int rendered = 0;
+        for (int y = tile.y0; y < tile.y1; y += step)
+            for (int x = tile.x0; x < tile.x1; x += step)
+            {
+                if (previousStep == 0 || x % previousStep != 0 || y % previousStep != 0)
+                {
+                    tile.frame.renderPixel(x, y);
+                    rendered++;
+                }
+                if (step > 1)
+                    tile.frame.fillBlock(x, y, step);
+            }
+        progress.pixelsRendered(rendered);
+        
+        RenderEvents.commitTile(event, tile.frame.view.getName(), tile.x0, tile.y0, tile.x1 - tile.x0,
+                tile.y1 - tile.y0, step, rendered, counters.rays - startRays,
+                counters.intersectionTests - startIntersectionTests);
+    }
+    
+    /**
+     * Runs the tasks on the pool and waits for all of them, or runs them on this thread if there is no pool
+     */
+    static void runAll(ExecutorService pool, List<Runnable> tasks)
+    {
+        if (pool == null)
+        {
+            for (Runnable task : tasks)
+                task.run();
+            return;
+        }
+        
+        List<Future<?>> futures = new ArrayList<>();
+        for (Runnable task : tasks)
+            futures.add(pool.submit(task));
+        try
+        {
+            for (Future<?> future : futures)
+                future.get();
+        }
+        catch (ExecutionException e)
+        {
+            if (e.getCause() instanceof RuntimeException)
+                throw (RuntimeException) e.getCause();
+            if (e.getCause() instanceof Error)
+                throw (Error) e.getCause();
+            throw new IllegalStateException(e.getCause());
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while rendering", e);
+        }
+    }
     
-            // Print percentage done
-            //            long currentSec = (System.currentTimeMillis() - startTime) / 1000;
-            //            if (currentSec != lastSecPrinted)
-            //            {
-            //                System.out.printf("%d%% complete...\n", 100 * y / pixelHeight);
-            //                lastSecPrinted = currentSec;
-            //            }
+    /**
+     * Renders single pixels of the image of a view, into its frame buffer
+     */
+    private class FrameRenderer
+    {
+        final View view;
+        final Scene scene;
+        final byte[] rgbData;
+        final boolean superSampling;
+        final double superSamplingFactor;
+        final GBuffer gBuffer;
+        final CostHeatmap heatmap;
+        ShadowVisibilityCache shadowVisibilityCache;
+        
+        FrameRenderer(View view, Scene scene)
+        {
+            this.view = view;
+            this.scene = scene;
+            rgbData = new byte[view.getWidth() * view.getHeight() * 3];
+            superSampling = RayTracer.this.superSampling && scene.superSamplingLevel > 1;
+            superSamplingFactor = 1.0 / scene.superSamplingLevel;
+            gBuffer = denoise ? new GBuffer(view.getWidth(), view.getHeight(), scene.lights.size()) : null;
+            heatmap = RayTracer.this.heatmap ? new CostHeatmap(view.getWidth(), view.getHeight()) : null;
+        }
+        
+        /**
+         * Creates the shadow visibility cache of the view
+         *
+         * @return tasks that fully sample shadows on the grid pixels of the cache, to interpolate from - one per row
+         */
+        List<Runnable> sampleShadowVisibilityCache()
+        {
+            ShadowVisibilityCache cache = new ShadowVisibilityCache(scene, view.getOrigin(), view.getWidth(),
+                    view.getHeight());
+            shadowVisibilityCache = cache;
+            List<Runnable> tasks = new ArrayList<>();
+            for (int gridRow = 0; gridRow < cache.getRows(); gridRow++)
+            {
+                int row = gridRow;
+                tasks.add(() -> {
+                    for (int column = 0; column < cache.getColumns(); column++)
+                    {
+                        Vec3 rayDirection = view.getDirection(cache.gridX(column) + 0.5, cache.gridY(row) + 0.5);
+                        cache.sample(column, row, scene.raycast(view.getOrigin(), rayDirection));
+                    }
+                });
+            }
+            return tasks;
+        }
+        
+        void renderPixel(int x, int y)
+        {
+            if (heatmap == null)
+            {
+                tracePixel(x, y);
+                return;
+            }
+            WorkCounters counters = WorkCounters.current();
+            long startTime = System.nanoTime();
+            long startRays = counters.rays, startIntersectionTests = counters.intersectionTests;
+            tracePixel(x, y);
+            heatmap.record(x, y, System.nanoTime() - startTime, counters.rays - startRays,
+                    counters.intersectionTests - startIntersectionTests);
+        }
+        
+        private void tracePixel(int x, int y)
+        {
+            Vec3 origin = view.getOrigin();
+            Color avgColor = new Color(0, 0, 0);
+            if (superSampling)
+            {
+                for (int xx = 0; xx < scene.superSamplingLevel; xx++)
+                    for (int yy = 0; yy < scene.superSamplingLevel; yy++)
+                    {
+                        ThreadLocalRandom random = ThreadLocalRandom.current();
+                        double randomUp = random.nextDouble(), randomRight = random.nextDouble();
+                        Vec3 rayDirection = view.getDirection(x + (xx + randomRight) * superSamplingFactor,
+                                y + (yy + randomUp) * superSamplingFactor);
+                        Intersection intersection = scene.raycast(origin, rayDirection);
+                        double[] illuminations = getIlluminations(x, y, intersection, xx == 0 && yy == 0,
+                                superSamplingFactor * superSamplingFactor);
+                        Color color = scene.getColor(intersection, 0, 1, illuminations);
+                        avgColor = avgColor.plus(color.scaledBy(superSamplingFactor * superSamplingFactor));
+                    }
+            }
+            else
+            {
+                Vec3 rayDirection = view.getDirection(x + 0.5, y + 0.5);
+                Intersection intersection = scene.raycast(origin, rayDirection);
+                double[] illuminations = getIlluminations(x, y, intersection, true, 1);
+                avgColor = scene.getColor(intersection, 0, 1, illuminations);
+            }
+            int pixelIndex = (y * view.getWidth() + x) * 3;
+            rgbData[pixelIndex] = avgColor.getRed();
+            rgbData[pixelIndex + 1] = avgColor.getGreen();
+            rgbData[pixelIndex + 2] = avgColor.getBlue();
+        }
+        
+        /**
+         * Records the hit of a sub-sample of pixel (x, y) in the G-buffer, if there is one: the geometry of the first
+         * sub-sample, and the lighting of each
+         *
+         * @param first whether this is the first sub-sample of the pixel, or the only one
+         * @param share of the pixel's color the sub-sample makes up
+         * @return the illumination of each light at the hit, if already known (interpolated by the shadow visibility
+         * cache, or sampled for the G-buffer), or else null
+         */
+        private double[] getIlluminations(int x, int y, Intersection intersection, boolean first, double share)
+        {
+            double[] illuminations = shadowVisibilityCache == null ? null
+                    : shadowVisibilityCache.interpolate(x, y, intersection);
+            if (gBuffer != null)
+            {
+                if (first)
+                    gBuffer.record(x, y, view.getOrigin(), intersection);
+                if (intersection != null)
+                {
+                    if (illuminations == null)
+                        illuminations = scene.getIlluminations(intersection); // cast here rather than in getColor
+                    gBuffer.addLighting(x, y, share, illuminations, scene.getLightColors(intersection));
+                }
+            }
+            return illuminations;
+        }
+        
+        /**
+         * Copies pixel (x, y) over the size x size block below and right of it, for previews
+         */
+        void fillBlock(int x, int y, int size)
+        {
+            int width = view.getWidth();
+            int source = (y * width + x) * 3;
+            for (int blockY = y; blockY < Math.min(y + size, view.getHeight()); blockY++)
+                for (int blockX = x; blockX < Math.min(x + size, width); blockX++)
+                {
+                    int pixelIndex = (blockY * width + blockX) * 3;
+                    rgbData[pixelIndex] = rgbData[source];
+                    rgbData[pixelIndex + 1] = rgbData[source + 1];
+                    rgbData[pixelIndex + 2] = rgbData[source + 2];
+                }
         }
-        System.out.printf("Finished running in: %s\n", GetFormattedInterval(System.currentTimeMillis() - startTime));
-        return rgbData;
     }
     
-    private static String GetFormattedInterval(final long ms)
+    static String GetFormattedInterval(final long ms)
     {
         long millis = ms % 1000;
         long x = ms / 1000;
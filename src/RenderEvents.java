@@ -0,0 +1,90 @@
+/**
+ * Java Flight Recorder events of the renderer, to find expensive tiles and phases in recordings of production renders,
+ * e.g. with -XX:StartFlightRecording=filename=render.jfr. They cost next to nothing while not recorded.
+ * <p>
+ * The events need jdk.jfr, which javac --release 8 can't compile against, so they are in their own source folder,
+ * src-jfr, and loaded by name. The IntelliJ and Eclipse projects build it along with src, with any JDK that has JFR
+ * (OpenJDK 8u262 and later). On the command line, compile it after src: javac -cp out -d out src-jfr/*.java.
+ * Without the events, or on a JVM without JFR, every method here does nothing, and begin methods return null.
+ */
+abstract class RenderEvents
+{
+    private static final RenderEvents events = load();
+    
+    private static RenderEvents load()
+    {
+        try
+        {
+            return Class.forName("JfrRenderEvents").asSubclass(RenderEvents.class).getDeclaredConstructor()
+                    .newInstance();
+        }
+        catch (ReflectiveOperationException | LinkageError e)
+        {
+            return null;
+        }
+    }
+    
+    /**
+     * @return whether tile events are being recorded, and so need the {@link WorkCounters}
+     */
+    static boolean isTileRecorded()
+    {
+        return events != null && events.tileEnabled();
+    }
+    
+    /**
+     * @return a started tile event, or null if the events are unavailable or disabled
+     */
+    static Object beginTile()
+    {
+        return events == null ? null : events.startTile();
+    }
+    
+    /**
+     * Ends and commits the tile event, if it was started and lasted long enough to be recorded
+     *
+     * @param step pixels per preview pixel of the pass, 1 for the final pass
+     */
+    static void commitTile(Object event, String view, int x, int y, int width, int height, int step, int pixels,
+                           long rays, long intersectionTests)
+    {
+        if (event != null)
+            events.endTile(event, view, x, y, width, height, step, pixels, rays, intersectionTests);
+    }
+    
+    /**
+     * @return a started phase event, or null if the events are unavailable or disabled
+     */
+    static Object beginPhase()
+    {
+        return events == null ? null : events.startPhase();
+    }
+    
+    /**
+     * Ends and commits the phase event, if it was started and lasted long enough to be recorded
+     *
+     * @param rays cast by all threads since the event began
+     */
+    static void commitPhase(Object event, String phase, int views, long rays)
+    {
+        if (event != null)
+            events.endPhase(event, phase, views, rays);
+    }
+    
+    abstract boolean tileEnabled();
+    
+    /**
+     * @return a started event, or null if disabled
+     */
+    abstract Object startTile();
+    
+    abstract void endTile(Object event, String view, int x, int y, int width, int height, int step, int pixels,
+                          long rays, long intersectionTests);
+    
+    /**
+     * @return a started event, or null if disabled
+     */
+    abstract Object startPhase();
+    
+    abstract void endPhase(Object event, String phase, int views, long rays);
+}
@@ -0,0 +1,154 @@
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Reports rendering progress from a separate low-priority thread, so the render loop itself never touches the
+ * console. At a fixed rate it samples how much of the frame buffer is done and prints the percentage, rays per
+ * second and an estimated time left. Optionally it also samples the frame buffer itself, printing an ASCII thumbnail
+ * of the image so far with each report, and of the finished image at the end.
+ * <p>
+ * The frame buffer is read without synchronizing with the render threads, so a thumbnail may show some pixels a
+ * little late - harmless for a preview, and it keeps the render loop free of locks.
+ */
+public class RenderProgress implements Runnable
+{
+    // full block, dark and medium shade, @, bilabial click, o, bullet, middle dot and space, escaped so that the
+    // source reads the same in any encoding
+    private static String grayscale_string = "\u2588\u2593\u2592@\u0298o\u2022\u00B7 ";
+    private static boolean REVERSE_ASCII_BLACK_AND_WHITE = false;
+    private static boolean SKIP_EVERY_SECOND_ASCII_LINE = true; // should be true unless your letters are square
+    private static final int ASCII_PRINT_WIDTH = 78;
+    private static final long REPORT_INTERVAL_MILLIS = 1000;
+
+    static
+    {
+        if (REVERSE_ASCII_BLACK_AND_WHITE)
+            grayscale_string = (new StringBuilder(grayscale_string)).reverse().toString();
+    }
+
+    private final byte[] rgbData;
+    private final int pixelWidth;
+    private final int pixelHeight;
+    private final long totalPixels;
+    private final Scene scene;
+    private final boolean printReports;
+    private final boolean printAscii;
+    private final AtomicLong pixelsDone = new AtomicLong();
+    private final Thread thread;
+    private long startTime;
+    private long startRayCount;
+    private volatile boolean finished;
+
+    /**
+     * @param rgbData frame buffer of the ASCII thumbnails
+     * @param totalPixels pixels to render in all, which may be more than those of the frame buffer when rendering
+     *                    several views
+     */
+    public RenderProgress(byte[] rgbData, int pixelWidth, int pixelHeight, long totalPixels, Scene scene,
+                          boolean printReports, boolean printAscii)
+    {
+        this.rgbData = rgbData;
+        this.pixelWidth = pixelWidth;
+        this.pixelHeight = pixelHeight;
+        this.totalPixels = totalPixels;
+        this.scene = scene;
+        this.printReports = printReports;
+        this.printAscii = printAscii;
+        thread = new Thread(this, "render-progress");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY);
+    }
+
+    public void start()
+    {
+        startTime = System.currentTimeMillis();
+        startRayCount = scene.rayCount.sum();
+        if (printReports)
+            thread.start();
+    }
+
+    /**
+     * Called by the render loop whenever a batch of pixels has been written to the frame buffer.
+     */
+    public void pixelsRendered(int count)
+    {
+        pixelsDone.addAndGet(count);
+    }
+
+    /**
+     * Stops the reporting thread and prints the final summary (and the thumbnail of the finished image, if enabled).
+     */
+    public void finish()
+    {
+        finished = true;
+        thread.interrupt();
+        try
+        {
+            thread.join();
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+
+        if (printAscii)
+            printAsciiThumbnail();
+        long elapsed = System.currentTimeMillis() - startTime;
+        long rays = scene.rayCount.sum() - startRayCount;
+        System.out.printf("Finished running in: %s (%d rays, %.0f rays/sec)\n", RayTracer.GetFormattedInterval(elapsed),
+                rays, raysPerSecond(rays, elapsed));
+    }
+
+    @Override
+    public void run()
+    {
+        while (!finished)
+        {
+            try
+            {
+                Thread.sleep(REPORT_INTERVAL_MILLIS);
+            }
+            catch (InterruptedException e)
+            {
+                return;
+            }
+            if (!finished)
+                printReport();
+        }
+    }
+
+    private void printReport()
+    {
+        long done = pixelsDone.get();
+        long elapsed = System.currentTimeMillis() - startTime;
+        long rays = scene.rayCount.sum() - startRayCount;
+        String eta = done == 0 ? "unknown" : RayTracer.GetFormattedInterval(elapsed * (totalPixels - done) / done);
+        if (printAscii)
+            printAsciiThumbnail();
+        System.out.printf("%d%% complete, %.0f rays/sec, ETA %s\n", 100 * done / totalPixels,
+                raysPerSecond(rays, elapsed), eta);
+    }
+
+    private static double raysPerSecond(long rays, long elapsedMillis)
+    {
+        return elapsedMillis == 0 ? 0 : rays * 1000.0 / elapsedMillis;
+    }
+
+    private void printAsciiThumbnail()
+    {
+        int ascii_x_skip = Math.max(1, pixelWidth / ASCII_PRINT_WIDTH);
+        int ascii_y_skip = Math.max(1, pixelHeight / ASCII_PRINT_WIDTH) * (SKIP_EVERY_SECOND_ASCII_LINE ? 2 : 1);
+        StringBuilder thumbnail = new StringBuilder();
+        for (int y = 0; y < pixelHeight; y += ascii_y_skip)
+        {
+            for (int x = 0; x < pixelWidth; x += ascii_x_skip)
+            {
+                int pixelIndex = (y * pixelWidth + x) * 3;
+                double grayscale = ((rgbData[pixelIndex] & 0xFF) + (rgbData[pixelIndex + 1] & 0xFF)
+                        + (rgbData[pixelIndex + 2] & 0xFF)) / 3.0 / 255;
+                thumbnail.append(grayscale_string.charAt((int) (grayscale * grayscale_string.length() * 0.99)));
+            }
+            thumbnail.append('\n');
+        }
+        System.out.print(thumbnail);
+    }
+}
@@ -0,0 +1,274 @@
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Long-lived render service. Keeps the JVM warm and parsed scenes cached, so repeated renders of the same scenes
+ * skip startup and parsing.
+ * <p>
+ * Listens on localhost and accepts:
+ * <pre>
+ * /render?scene=scenes/Pool.txt&amp;output=pool.png[&amp;width=500&amp;height=500]
+ *         [&amp;background=r,g,b][&amp;shadowRays=n][&amp;maxRecursion=n][&amp;superSampling=n]
+ *         [&amp;rouletteThreshold=x][&amp;denoise=true][&amp;shadowCache=true][&amp;crop=x,y,w,h][&amp;preview=true]
+ *         [&amp;views=stereo,cubemap,panorama][&amp;eyeSeparation=d][&amp;heatmap=true]
+ *     queues a job and replies with its id, 400 if width x height is over MAX_IMAGE_PIXELS, or 503 if the queue is
+ *     full. superSampling=n takes n x n sub-samples per pixel; without it, super sampling is off, as on the command
+ *     line
+ * /status?id=n
+ *     replies with the job state: queued, running, done or failed. Finished jobs are forgotten after
+ *     FINISHED_JOB_RETENTION_MILLIS, or sooner once more than MAX_FINISHED_JOBS have finished, and then reply 404
+ * </pre>
+ * Usage: RenderServer [port [threads [queue capacity [cache megabytes]]]]
+ */
+public class RenderServer
+{
+    private static final long FINISHED_JOB_RETENTION_MILLIS = 10 * 60 * 1000;
+    private static final int MAX_FINISHED_JOBS = 1000;
+    private static final long MAX_IMAGE_PIXELS = 64L * 1024 * 1024; // width x height of a job
+    
+    private enum JobState
+    {
+        QUEUED, RUNNING, DONE, FAILED
+    }
+
+    private class RenderJob implements Runnable
+    {
+        final int id;
+        final String sceneFileName;
+        final String outputFileName;
+        final Map<String, String> params;
+        volatile JobState state = JobState.QUEUED;
+        volatile String error;
+        long finishedTime;
+
+        RenderJob(int id, Map<String, String> params)
+        {
+            this.id = id;
+            this.params = params;
+            this.sceneFileName = params.get("scene");
+            this.outputFileName = params.get("output");
+        }
+
+        @Override
+        public void run()
+        {
+            state = JobState.RUNNING;
+            try
+            {
+                RayTracer cached = sceneCache.get(sceneFileName);
+                Scene scene = new Scene(cached.getScene());
+                if (params.containsKey("background"))
+                {
+                    String[] rgb = params.get("background").split(",");
+                    scene.backgroundColor = new Color(Double.parseDouble(rgb[0]), Double.parseDouble(rgb[1]),
+                            Double.parseDouble(rgb[2]));
+                }
+                scene.shadowRayCount = intParam("shadowRays", scene.shadowRayCount);
+                scene.maximumRecursionCount = intParam("maxRecursion", scene.maximumRecursionCount);
+                if (params.containsKey("rouletteThreshold"))
+                    scene.rouletteThreshold = Double.parseDouble(params.get("rouletteThreshold"));
+
+                RayTracer tracer = new RayTracer(scene, cached.getCamera(), intParam("width", 500),
+                        intParam("height", 500));
+                if (params.containsKey("superSampling"))
+                {
+                    scene.superSamplingLevel = intParam("superSampling", scene.superSamplingLevel);
+                    tracer.setSuperSampling(scene.superSamplingLevel > 1);
+                }
+                tracer.setDenoise(Boolean.parseBoolean(params.get("denoise")));
+                tracer.setShadowCache(Boolean.parseBoolean(params.get("shadowCache")));
+                tracer.setPreview(Boolean.parseBoolean(params.get("preview")));
+                tracer.setHeatmap(Boolean.parseBoolean(params.get("heatmap")));
+                if (params.containsKey("crop"))
+                    tracer.setCrop(params.get("crop"));
+                if (params.containsKey("views"))
+                    tracer.setViews(params.get("views"));
+                if (params.containsKey("eyeSeparation"))
+                    tracer.setEyeSeparation(Double.parseDouble(params.get("eyeSeparation")));
+                tracer.renderScene(outputFileName);
+                state = JobState.DONE;
+            }
+            catch (Throwable e) // even an OutOfMemoryError only fails this job, and must not leave it running
+            {
+                error = e.toString();
+                state = JobState.FAILED;
+                System.out.println(String.format("Job %d failed: %s", id, error));
+            }
+            finally
+            {
+                jobFinished(this);
+            }
+        }
+
+        private int intParam(String name, int defaultValue)
+        {
+            String value = params.get(name);
+            return value == null ? defaultValue : Integer.parseInt(value);
+        }
+    }
+
+    private final ThreadPoolExecutor workers;
+    private final SceneCache sceneCache;
+    private final Map<Integer, RenderJob> jobs = new ConcurrentHashMap<>();
+    private final AtomicInteger nextJobId = new AtomicInteger(1);
+    private final ArrayDeque<RenderJob> finishedJobs = new ArrayDeque<>(); // oldest first
+
+    public RenderServer(int threads, int queueCapacity, long cacheBudgetInBytes)
+    {
+        workers = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity));
+        sceneCache = new SceneCache(cacheBudgetInBytes);
+    }
+
+    public static void main(String[] args) throws IOException
+    {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : 8080;
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+        int queueCapacity = args.length > 2 ? Integer.parseInt(args[2]) : 64;
+        long cacheMegabytes = args.length > 3 ? Long.parseLong(args[3]) : 256;
+
+        RenderServer server = new RenderServer(threads, queueCapacity, cacheMegabytes * 1024 * 1024);
+        server.listen(port);
+    }
+
+    public void listen(int port) throws IOException
+    {
+        HttpServer http = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        http.createContext("/render", this::handleRender);
+        http.createContext("/status", this::handleStatus);
+        http.start();
+        System.out.println(String.format("Render server listening on port %d with %d workers", port,
+                workers.getMaximumPoolSize()));
+    }
+
+    private void jobFinished(RenderJob job)
+    {
+        synchronized (finishedJobs)
+        {
+            job.finishedTime = System.currentTimeMillis();
+            finishedJobs.addLast(job);
+        }
+        forgetOldJobs();
+    }
+    
+    /**
+     * Removes finished jobs past their retention time, or beyond the most recent MAX_FINISHED_JOBS, so a long-lived
+     * server doesn't keep the parameters of every job it ever ran
+     */
+    private void forgetOldJobs()
+    {
+        long oldestRetainedTime = System.currentTimeMillis() - FINISHED_JOB_RETENTION_MILLIS;
+        synchronized (finishedJobs)
+        {
+            while (!finishedJobs.isEmpty() && (finishedJobs.size() > MAX_FINISHED_JOBS
+                    || finishedJobs.peekFirst().finishedTime < oldestRetainedTime))
+                jobs.remove(finishedJobs.removeFirst().id);
+        }
+    }
+    
+    private void handleRender(HttpExchange exchange) throws IOException
+    {
+        Map<String, String> params = parseQuery(exchange.getRequestURI().getRawQuery());
+        if (!params.containsKey("scene") || !params.containsKey("output"))
+        {
+            reply(exchange, 400, "Missing scene or output parameter");
+            return;
+        }
+        try
+        {
+            long width = Integer.parseInt(params.getOrDefault("width", "500"));
+            long height = Integer.parseInt(params.getOrDefault("height", "500"));
+            if (width <= 0 || height <= 0 || width * height > MAX_IMAGE_PIXELS)
+            {
+                reply(exchange, 400, "Image size out of range, at most " + MAX_IMAGE_PIXELS + " pixels");
+                return;
+            }
+        }
+        catch (NumberFormatException e)
+        {
+            reply(exchange, 400, "Invalid width or height");
+            return;
+        }
+
+        RenderJob job = new RenderJob(nextJobId.getAndIncrement(), params);
+        jobs.put(job.id, job);
+        try
+        {
+            workers.execute(job);
+        }
+        catch (RejectedExecutionException e)
+        {
+            jobs.remove(job.id);
+            reply(exchange, 503, "Queue is full");
+            return;
+        }
+        reply(exchange, 202, Integer.toString(job.id));
+    }
+
+    private void handleStatus(HttpExchange exchange) throws IOException
+    {
+        forgetOldJobs();
+        String id = parseQuery(exchange.getRequestURI().getRawQuery()).get("id");
+        RenderJob job;
+        try
+        {
+            job = id == null ? null : jobs.get(Integer.parseInt(id));
+        }
+        catch (NumberFormatException e)
+        {
+            job = null;
+        }
+        if (job == null)
+        {
+            reply(exchange, 404, "No such job");
+            return;
+        }
+
+        String status = job.state.name().toLowerCase();
+        if (job.state == JobState.FAILED)
+            status += ": " + job.error;
+        reply(exchange, 200, status);
+    }
+
+    private static Map<String, String> parseQuery(String query) throws UnsupportedEncodingException
+    {
+        Map<String, String> params = new HashMap<>();
+        if (query == null)
+            return params;
+        for (String pair : query.split("&"))
+        {
+            int split = pair.indexOf('=');
+            if (split > 0)
+                params.put(URLDecoder.decode(pair.substring(0, split), "UTF-8"),
+                        URLDecoder.decode(pair.substring(split + 1), "UTF-8"));
+        }
+        return params;
+    }
+
+    private static void reply(HttpExchange exchange, int code, String body) throws IOException
+    {
+        byte[] bytes = (body + "\n").getBytes(StandardCharsets.UTF_8);
+        exchange.sendResponseHeaders(code, bytes.length);
+        try (OutputStream out = exchange.getResponseBody())
+        {
+            out.write(bytes);
+        }
+    }
+}
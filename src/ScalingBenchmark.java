@@ -0,0 +1,207 @@
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Measures how rendering speed scales with scene size and thread count, on scenes made by {@link SceneGenerator}.
+ * For every size, generates the scene once and renders it with every thread count, reporting the best rays per
+ * second of a few runs and the speedup over the first thread count.
+ * <p>
+ * Usage: ScalingBenchmark [--sizes 100,1000,10000] [--threads 1,2,4] [--shapes spheres|soup|mesh]
+ * [--width 320] [--height 240] [--runs 3] [--seed n] [--float] [--csv results.csv]
+ */
+public class ScalingBenchmark
+{
+    private static class Result
+    {
+        final int size;
+        final int threads;
+        final long buildMillis;
+        final long renderMillis;
+        final long rays;
+
+        Result(int size, int threads, long buildMillis, long renderMillis, long rays)
+        {
+            this.size = size;
+            this.threads = threads;
+            this.buildMillis = buildMillis;
+            this.renderMillis = renderMillis;
+            this.rays = rays;
+        }
+
+        double raysPerSecond()
+        {
+            return renderMillis == 0 ? 0 : rays * 1000.0 / renderMillis;
+        }
+    }
+
+    public static void main(String[] args)
+    {
+        try
+        {
+            int[] sizes = {100, 1000, 10000};
+            int[] threadCounts = {1, Runtime.getRuntime().availableProcessors()};
+            String shapes = "spheres";
+            int width = 320, height = 240, runs = 3;
+            long seed = 1;
+            String csvFileName = null;
+            boolean singlePrecision = false;
+
+            for (int argIndex = 0; argIndex < args.length; argIndex++)
+            {
+                String option = args[argIndex];
+                if (option.equals("--float"))
+                {
+                    singlePrecision = true;
+                    continue;
+                }
+                if (++argIndex == args.length)
+                    throw new RayTracer.RayTracerException("Missing value of option: " + option);
+                String value = args[argIndex];
+                switch (option)
+                {
+                    case "--sizes":
+                        sizes = parseList(value);
+                        break;
+                    case "--threads":
+                        threadCounts = parseList(value);
+                        break;
+                    case "--shapes":
+                        if (!value.equals("spheres") && !value.equals("soup") && !value.equals("mesh"))
+                            throw new RayTracer.RayTracerException("Unknown shapes: " + value
+                                    + ", expected spheres, soup or mesh");
+                        shapes = value;
+                        break;
+                    case "--width":
+                        width = Integer.parseInt(value);
+                        break;
+                    case "--height":
+                        height = Integer.parseInt(value);
+                        break;
+                    case "--runs":
+                        runs = Math.max(1, Integer.parseInt(value));
+                        break;
+                    case "--seed":
+                        seed = Long.parseLong(value);
+                        break;
+                    case "--csv":
+                        csvFileName = value;
+                        break;
+                    default:
+                        throw new RayTracer.RayTracerException("Unknown option: " + option);
+                }
+            }
+
+            List<Result> results = new ArrayList<>();
+            boolean warmedUp = false;
+            for (int size : sizes)
+            {
+                SceneGenerator generator = new SceneGenerator();
+                generator.setSeed(seed);
+                generator.setSphereCount(shapes.equals("spheres") ? size : 0);
+                generator.setTriangleCount(shapes.equals("spheres") ? 0 : size);
+                generator.setTessellated(shapes.equals("mesh"));
+                generator.setSinglePrecision(singlePrecision);
+                long buildStartTime = System.currentTimeMillis();
+                generator.generate();
+                long buildMillis = System.currentTimeMillis() - buildStartTime;
+                System.out.println(String.format("Generated %d %s in %s (%d KB):    %s", size, shapes,
+                        RayTracer.GetFormattedInterval(buildMillis), generator.getScene().estimatedSizeInBytes() / 1024,
+                        generator.getScene().accelerator));
+
+                if (!warmedUp) // let the JIT compile the render loop before the first measurement
+                {
+                    render(generator, threadCounts[0], width, height);
+                    warmedUp = true;
+                }
+
+                for (int threads : threadCounts)
+                {
+                    Result best = null;
+                    for (int run = 0; run < runs; run++)
+                    {
+                        long[] millisAndRays = render(generator, threads, width, height);
+                        Result result = new Result(size, threads, buildMillis, millisAndRays[0], millisAndRays[1]);
+                        if (best == null || result.raysPerSecond() > best.raysPerSecond())
+                            best = result;
+                    }
+                    results.add(best);
+                }
+            }
+
+            printTable(results, threadCounts[0]);
+            if (csvFileName != null)
+                writeCsv(results, csvFileName);
+        }
+        catch (RayTracer.RayTracerException e)
+        {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * @return the render time in milliseconds and the number of rays cast
+     */
+    private static long[] render(SceneGenerator generator, int threads, int width, int height)
+            throws RayTracer.RayTracerException
+    {
+        Scene scene = new Scene(generator.getScene()); // fresh statistics
+        RayTracer tracer = new RayTracer(scene, generator.getCamera(), width, height);
+        tracer.setThreads(threads);
+        long startTime = System.currentTimeMillis();
+        tracer.renderSceneWithoutSaving();
+        return new long[]{System.currentTimeMillis() - startTime, scene.rayCount.sum()};
+    }
+
+    private static int[] parseList(String list)
+    {
+        String[] values = list.split(",");
+        int[] result = new int[values.length];
+        for (int i = 0; i < values.length; i++)
+            result[i] = Integer.parseInt(values[i].trim());
+        return result;
+    }
+
+    private static void printTable(List<Result> results, int baseThreads)
+    {
+        System.out.println();
+        System.out.println(String.format("%10s %8s %12s %12s %14s %8s", "shapes", "threads", "build", "render",
+                "rays/sec", "speedup"));
+        for (Result result : results)
+            System.out.println(String.format("%10d %8d %12s %12s %14.0f %7.2fx", result.size, result.threads,
+                    RayTracer.GetFormattedInterval(result.buildMillis),
+                    RayTracer.GetFormattedInterval(result.renderMillis), result.raysPerSecond(),
+                    speedup(results, result, baseThreads)));
+    }
+
+    /**
+     * @return rays per second of the result relative to that of the same size with baseThreads threads
+     */
+    private static double speedup(List<Result> results, Result result, int baseThreads)
+    {
+        for (Result base : results)
+            if (base.size == result.size && base.threads == baseThreads)
+                return base.raysPerSecond() == 0 ? 0 : result.raysPerSecond() / base.raysPerSecond();
+        return 0;
+    }
+
+    private static void writeCsv(List<Result> results, String csvFileName) throws RayTracer.RayTracerException
+    {
+        try (PrintWriter out = new PrintWriter(new FileWriter(csvFileName)))
+        {
+            out.println("shapes,threads,build_ms,render_ms,rays,rays_per_sec");
+            for (Result result : results)
+                out.println(String.format("%d,%d,%d,%d,%d,%.0f", result.size, result.threads, result.buildMillis,
+                        result.renderMillis, result.rays, result.raysPerSecond()));
+            if (out.checkError())
+                throw new IOException("write failed");
+        }
+        catch (IOException e)
+        {
+            throw new RayTracer.RayTracerException("Failed to write results: " + csvFileName);
+        }
+        System.out.println("Saved results:    " + csvFileName);
+    }
+}
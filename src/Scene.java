@@ -1,5 +1,9 @@
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 
 class Scene
 {
@@ -8,12 +12,25 @@ class Scene
     public int shadowRayCount;
     public int maximumRecursionCount;
     public int superSamplingLevel;
+    public double rouletteThreshold = DEFAULT_ROULETTE_THRESHOLD;
+    public AcceleratorType acceleratorType = AcceleratorType.AUTO;
+    public boolean singlePrecision = false; // store shapes as floats, see buildAccelerator
     
     // Things
     
     public List<Material> materials;
     public List<Light> lights;
     public List<Shape> shapes;
+    public Accelerator accelerator; // index over shapes, see buildAccelerator
+    
+    // Statistics
+    
+    public final LongAdder rayCount = new LongAdder(); // primary, secondary and shadow rays cast so far
+    public final LongAdder occluderCacheLookups = new LongAdder(); // shadow rays with a cached occluder to test
+    public final LongAdder occluderCacheHits = new LongAdder(); // ... which the cached occluder blocked
+    
+    private static final AtomicLong nextId = new AtomicLong();
+    private final long id = nextId.getAndIncrement(); // tells scenes apart in the per thread caches, see ShadowRay
     
     public Scene()
     {
@@ -23,26 +40,112 @@ class Scene
     }
     
     /**
-     * Calculates for a given point and direction the closest shape it hits
+     * Creates a copy of the scene with its own general settings and statistics, sharing the (read only) materials,
+     * lights and shapes with the original.
      */
-    public Intersection raycast(Vec3 point, Vec3 direction)
+    public Scene(Scene other)
     {
-        Intersection closestIntersection = null;
-        double min_dist_sqr = Integer.MAX_VALUE;
-        for (Shape shape : shapes)
+        backgroundColor = other.backgroundColor;
+        shadowRayCount = other.shadowRayCount;
+        maximumRecursionCount = other.maximumRecursionCount;
+        superSamplingLevel = other.superSamplingLevel;
+        rouletteThreshold = other.rouletteThreshold;
+        acceleratorType = other.acceleratorType;
+        singlePrecision = other.singlePrecision;
+        materials = other.materials;
+        lights = other.lights;
+        shapes = other.shapes;
+        accelerator = other.accelerator;
+    }
+    
+    public enum AcceleratorType
+    {
+        AUTO, // grid for scenes with at least GRID_MINIMUM_SHAPES bounded shapes, list otherwise
+        LIST,
+        GRID
+    }
+    
+    /**
+     * Below this many bounded shapes, walking the grid costs more than testing every shape
+     */
+    public static final int GRID_MINIMUM_SHAPES = 32;
+    
+    /**
+     * Builds the accelerator for the shapes, according to acceleratorType.
+     * Must be called once all shapes are added, before rendering.
+     * <p>
+     * In single precision mode, first replaces the shapes by their single precision versions, which take half the
+     * memory or less and intersect rays in float arithmetic.
+     */
+    public void buildAccelerator()
+    {
+        if (singlePrecision)
+            for (int i = 0; i < shapes.size(); i++)
+                shapes.set(i, shapes.get(i).toSinglePrecision());
+        
+        AcceleratorType type = acceleratorType;
+        if (type == AcceleratorType.AUTO)
         {
-            Intersection intersection = shape.findRayIntersection(point, direction, false);
-            if (intersection != null)
-            {
-                double dist_sqr = point.minus(intersection.position).squareMagnitude();
-                if (dist_sqr < min_dist_sqr)
-                {
-                    min_dist_sqr = dist_sqr;
-                    closestIntersection = intersection;
-                }
-            }
+            int boundedShapes = 0;
+            for (Shape shape : shapes)
+                if (shape.getBoundingBox() != null)
+                    boundedShapes++;
+            type = boundedShapes >= GRID_MINIMUM_SHAPES ? AcceleratorType.GRID : AcceleratorType.LIST;
         }
-        return closestIntersection;
+        accelerator = type == AcceleratorType.GRID ? new UniformGrid(shapes) : new ShapeList(shapes);
+    }
+    
+    /**
+     * Rough estimate of the memory held by the scene, used for cache eviction
+     */
+    public long estimatedSizeInBytes()
+    {
+        long size = 64 + 96L * (materials.size() + lights.size());
+        for (Shape shape : shapes)
+            size += shape.estimatedSizeInBytes();
+        if (accelerator != null)
+            size += accelerator.estimatedSizeInBytes();
+        return size;
+    }
+    
+    /**
+     * Calculates for a given point and direction the closest shape it hits
+     */
+    public Intersection raycast(Vec3 point, Vec3 direction)
+    {
+        rayCount.increment();
+        if (WorkCounters.enabled)
+            WorkCounters.current().rays++;
+        return accelerator.findClosestIntersection(point, direction);
+    }
+    
+    /**
+     * Ray origins are moved off the surface they leave by this many units in the last place of the largest coordinate
+     * of the hit - a bound on the error of computing the hit position (and of rounding it to float, for single
+     * precision shapes), with a wide margin. See Wächter and Binder, "A Fast and Robust Method for Avoiding
+     * Self-Intersection", Ray Tracing Gems (2019).
+     */
+    private static final int RAY_ORIGIN_OFFSET_ULPS = 256;
+    
+    /**
+     * Smallest coordinate magnitude the origin offset is scaled by, so hits near the world origin are not offset by
+     * a vanishing amount
+     */
+    private static final double RAY_ORIGIN_OFFSET_MINIMUM_SCALE = 1.0 / 32;
+    
+    /**
+     * Relies on hit positions being accurate to their own coordinates, see {@link Shape#findRayIntersection}.
+     *
+     * @return origin for a ray leaving hit towards direction: the hit position, moved off the surface along the
+     * normal, to the side direction goes to, by an amount scaled to the precision of the coordinates
+     */
+    public Vec3 offsetRayOrigin(Intersection hit, Vec3 direction)
+    {
+        Vec3 position = hit.position;
+        double scale = Math.max(RAY_ORIGIN_OFFSET_MINIMUM_SCALE,
+                Math.max(Math.abs(position.x), Math.max(Math.abs(position.y), Math.abs(position.z))));
+        double offset = RAY_ORIGIN_OFFSET_ULPS * (singlePrecision ? Math.ulp((float) scale) : Math.ulp(scale));
+        return position.plus(hit.normal.scaledBy(hit.normal.dot(direction) < 0 ? -offset : offset));
     }
     
     /**
@@ -69,99 +172,403 @@ class Scene
     //        return color;
     //    }
     
-    private static final double MINIMUM_CONTRIBUTION = 1.0 / 256;
+    /**
+     * Reflection and transparency rays whose contribution to the pixel is below this are terminated randomly
+     * (russian roulette). The noise this adds to a pixel is at most about the threshold itself.
+     */
+    public static final double DEFAULT_ROULETTE_THRESHOLD = 1.0 / 64;
+    
+    /**
+     * A hit whose color waits on its reflection and transparency rays. Each one's color is added to the hit's once it
+     * is done, clamped per hit as the recursive evaluation did, so highlights seen in a mirror saturate the same way.
+     */
+    private static class PendingHit
+    {
+        Intersection hit;
+        double r, g, b; // direct light of the hit, plus that of the secondary rays done so far
+        double contribution;
+        double reflectionSurvival, transparencySurvival; // 0 for rays not cast
+        int recursionCount;
+        boolean tracingReflection; // or else transparency
+    }
+    
+    /**
+     * Per thread stack of pending hits. Entries are reused between pixels, so tracing does not allocate them.
+     */
+    private static class PendingHitStack
+    {
+        private PendingHit[] hits = new PendingHit[16];
+        private int size;
+        
+        PendingHit push()
+        {
+            if (size == hits.length)
+                hits = Arrays.copyOf(hits, size * 2);
+            if (hits[size] == null)
+                hits[size] = new PendingHit();
+            return hits[size++];
+        }
+        
+        PendingHit peek()
+        {
+            return hits[size - 1];
+        }
+        
+        void pop()
+        {
+            hits[--size].hit = null; // don't keep the scene's last hits alive
+        }
+    }
+    
+    private static final ThreadLocal<PendingHitStack> pendingHits = ThreadLocal.withInitial(PendingHitStack::new);
     
     /**
-     * Returns the color of the intersection, continues recursively.
-     * If maximumRecursionCount is reached, or there is no object intersected, or the contribution
-     * is too low - returns background color.
-     * Otherwise, calculates - diffused + specular + transparency + reflection
+     * Returns the color of the intersection, including everything seen through it.
+     * Evaluates the tree of reflection and transparency rays iteratively, with an explicit stack.
+     * Every ray that reaches maximumRecursionCount, or does not intersect any object - sees the background color.
+     * Otherwise it sees diffused + specular of its hit, and continues into transparency + reflection.
+     * <p>
+     * Reflection and transparency rays are only cast if they can contribute to the pixel. Rays that would contribute
+     * less than rouletteThreshold survive with a probability proportional to their contribution, and survivors are
+     * scaled up accordingly, so the expected color stays the same.
      */
     public Color getColor(Intersection hit, int recursionCount, double contribution)
     {
-        if (hit == null || recursionCount == maximumRecursionCount || contribution < MINIMUM_CONTRIBUTION)
-            return backgroundColor;
+        return getColor(hit, recursionCount, contribution, null);
+    }
     
-        Material mat = getMaterial(hit.materialIndex);
+    /**
+     * Same as {@link #getColor(Intersection, int, double)}, with the illumination of hit itself already known.
+     *
+     * @param illuminations if not null, the illumination of each light at hit (see getIlluminations), used instead
+     *                      of casting shadow rays from hit
+     */
+    public Color getColor(Intersection hit, int recursionCount, double contribution, double[] illuminations)
+    {
+        PendingHitStack stack = pendingHits.get();
+        int stackBottom = stack.size;
+        
+        while (true)
+        {
+            Material mat = hit == null || recursionCount == maximumRecursionCount ? null
+                    : getMaterial(hit.materialIndex);
+            double reflectionSurvival = 0, transparencySurvival = 0;
+            Color color;
+            if (mat == null)
+                color = backgroundColor;
+            else
+            {
+                color = getDirectColor(hit, mat, illuminations);
+                illuminations = null; // only known for the first hit
+                reflectionSurvival = survivalProbability(contribution * mat.reflectionColor.grayscale());
+                transparencySurvival = survivalProbability(contribution * mat.transparency);
+            }
+            
+            if (reflectionSurvival > 0 || transparencySurvival > 0)
+            {
+                PendingHit pending = stack.push();
+                pending.hit = hit;
+                pending.r = color.r;
+                pending.g = color.g;
+                pending.b = color.b;
+                pending.contribution = contribution;
+                pending.reflectionSurvival = reflectionSurvival;
+                pending.transparencySurvival = transparencySurvival;
+                pending.recursionCount = recursionCount;
+                pending.tracingReflection = reflectionSurvival > 0;
+            }
+            else
+            {
+                // The color is final: add it to the hits waiting on it, until one has another ray to trace
+                double r = color.r, g = color.g, b = color.b;
+                while (true)
+                {
+                    if (stack.size == stackBottom)
+                        return new Color(r, g, b);
+                    PendingHit pending = stack.peek();
+                    Material pendingMat = getMaterial(pending.hit.materialIndex);
+                    if (pending.tracingReflection)
+                    {
+                        double weight = 1 / pending.reflectionSurvival;
+                        pending.r = clamp(pending.r + clamp(pendingMat.reflectionColor.r * r * weight));
+                        pending.g = clamp(pending.g + clamp(pendingMat.reflectionColor.g * g * weight));
+                        pending.b = clamp(pending.b + clamp(pendingMat.reflectionColor.b * b * weight));
+                        if (pending.transparencySurvival > 0)
+                        {
+                            pending.tracingReflection = false;
+                            break;
+                        }
+                    }
+                    else
+                    {
+                        double weight = pendingMat.transparency / pending.transparencySurvival;
+                        pending.r = clamp(pending.r + clamp(r * weight));
+                        pending.g = clamp(pending.g + clamp(g * weight));
+                        pending.b = clamp(pending.b + clamp(b * weight));
+                    }
+                    r = pending.r;
+                    g = pending.g;
+                    b = pending.b;
+                    stack.pop();
+                }
+            }
+            
+            // Trace the next ray of the top pending hit
+            PendingHit pending = stack.peek();
+            Material pendingMat = getMaterial(pending.hit.materialIndex);
+            Vec3 direction;
+            if (pending.tracingReflection)
+            {
+                direction = pending.hit.direction.reflectedBy(pending.hit.normal);
+                contribution = pending.contribution * pendingMat.reflectionColor.grayscale()
+                        / pending.reflectionSurvival;
+            }
+            else
+            {
+                direction = pending.hit.direction;
+                contribution = pending.contribution * pendingMat.transparency / pending.transparencySurvival;
+            }
+            recursionCount = pending.recursionCount + 1;
+            hit = raycast(offsetRayOrigin(pending.hit, direction), direction);
+        }
+    }
+    
+    /**
+     * Clamp to [0,1], as Color does
+     */
+    private static double clamp(double x)
+    {
+        return x < 0 ? 0 : x > 1 ? 1 : x;
+    }
+    
+    /**
+     * Returns the light reaching the eye directly from the intersection - ambient + diffused + specular, without
+     * transparency and reflection
+     */
+    private Color getDirectColor(Intersection hit, Material mat, double[] illuminations)
+    {
         Color color = new Color(0, 0, 0);
         
         //ambient lighting
         color = color.plus(backgroundColor.mul(mat.diffuseColor).scaledBy(mat.transparency));
         
         Vec3 point = hit.position;
-        for (Light light : lights)
+        for (int lightIndex = 0; lightIndex < lights.size(); lightIndex++)
         {
+            Light light = lights.get(lightIndex);
             Vec3 reverseLightDirection = light.position.minus(point).normalized();
-            Vec3 lightReflectionDirection = reverseLightDirection.reflectedBy(hit.normal).normalized(); //is inverted
-            Vec3 start = point.plus(reverseLightDirection.scaledBy(0.001));
-            double illumination = 1.0;
-            double invCountOfShadowRays = 1.0 / shadowRayCount;
-            double shadowRayShadowFraction = 1.0 / shadowRayCount / shadowRayCount * light.shadowIntensity;
-            Vec3 lightWidthRight = reverseLightDirection.anyPerpendicular().scaledBy(light.width);
-            Vec3 lightWidthDown = lightWidthRight.cross(reverseLightDirection.normalized()).scaledBy(light.width);
-            double rayLength;
+            Vec3 start = offsetRayOrigin(hit, reverseLightDirection);
+            double illumination = illuminations != null ? illuminations[lightIndex]
+                    : getIllumination(light, lightIndex, start, reverseLightDirection);
+            
+            if (illumination > 0)
+                color = color.plus(getLightColor(hit, mat, light, reverseLightDirection).scaledBy(illumination));
+        }
+        return color;
+    }
+    
+    /**
+     * @return the light of each light reaching the eye directly from the intersection - diffused + specular - if
+     * nothing shadows it
+     */
+    public Color[] getLightColors(Intersection hit)
+    {
+        Material mat = getMaterial(hit.materialIndex);
+        Color[] colors = new Color[lights.size()];
+        for (int lightIndex = 0; lightIndex < lights.size(); lightIndex++)
+        {
+            Light light = lights.get(lightIndex);
+            colors[lightIndex] = getLightColor(hit, mat, light, light.position.minus(hit.position).normalized());
+        }
+        return colors;
+    }
+    
+    private Color getLightColor(Intersection hit, Material mat, Light light, Vec3 reverseLightDirection)
+    {
+        Vec3 lightReflectionDirection = reverseLightDirection.reflectedBy(hit.normal).normalized(); //is inverted
+        //diffuse lighting
+        Color diffuseColor = light.color.mul(mat.diffuseColor.scaledBy(
+                hit.normal.dot(reverseLightDirection)));
+        //specular lighting
+        Color specularColor = light.color.mul(mat.specularColor.scaledBy(light.specularIntensity
+                * Math.pow(Math.abs(lightReflectionDirection.dot(hit.direction)), mat.phongSpecularity)));
+        
+        return diffuseColor.plus(specularColor).scaledBy(1 - mat.transparency);
+    }
+    
+    /**
+     * @return the illumination of each light at the hit, by shadow rays
+     */
+    public double[] getIlluminations(Intersection hit)
+    {
+        double[] illuminations = new double[lights.size()];
+        for (int lightIndex = 0; lightIndex < lights.size(); lightIndex++)
+        {
+            Light light = lights.get(lightIndex);
+            Vec3 reverseLightDirection = light.position.minus(hit.position).normalized();
+            Vec3 start = offsetRayOrigin(hit, reverseLightDirection);
+            illuminations[lightIndex] = getIllumination(light, lightIndex, start, reverseLightDirection);
+        }
+        return illuminations;
+    }
+    
+    /**
+     * Casts shadowRayCount² shadow rays from start towards the area of the light.
+     * Start is on the side of the surface facing the center of the light, so the rays towards parts of the light
+     * behind the surface (e.g. below a floor) are blocked by the surface itself. Of the shipped scenes, this darkens
+     * Spheres.txt and Transparency.txt, whose wide lights reach below their floors, by about 2.5 levels on average.
+     *
+     * @return the fraction of the light reaching start, where shadows only block shadowIntensity of the light
+     */
+    private double getIllumination(Light light, int lightIndex, Vec3 start, Vec3 reverseLightDirection)
+    {
+        double illumination = 1.0;
+        double invCountOfShadowRays = 1.0 / shadowRayCount;
+        double shadowRayShadowFraction = 1.0 / shadowRayCount / shadowRayCount * light.shadowIntensity;
+        Vec3 lightWidthRight = reverseLightDirection.anyPerpendicular().scaledBy(light.width);
+        Vec3 lightWidthDown = lightWidthRight.cross(reverseLightDirection.normalized()).scaledBy(light.width);
+        double rayLength;
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        ShadowRay shadowRay = shadowRays.get();
+        shadowRay.begin(this);
+        try
+        {
             for (int xx = 0; xx < shadowRayCount; xx++)
                 for (int yy = 0; yy < shadowRayCount; yy++)
                 {
-                    double randomUp = Math.random(), randomRight = Math.random();
+                    double randomUp = random.nextDouble(), randomRight = random.nextDouble();
                     Vec3 pointNearLight = light.position
-                            .plus(lightWidthRight.scaledBy(
-                                    (-shadowRayCount / 2 + xx + randomRight - 0.5) * invCountOfShadowRays))
-                            .plus(lightWidthDown.scaledBy(
-                                    (-shadowRayCount / 2 + yy + randomUp - 0.5) * invCountOfShadowRays));
-    
+                            .plus(lightWidthRight.scaledBy((xx + randomRight) * invCountOfShadowRays - 0.5))
+                            .plus(lightWidthDown.scaledBy((yy + randomUp) * invCountOfShadowRays - 0.5));
+                    
                     Vec3 reverseShadowDirection = pointNearLight.minus(start).normalized();
                     rayLength = start.minus(pointNearLight).magnitude();
-                    double fractionOfLightLeftInRay = 1.0;
-                    for (Shape s : shapes)
-                    {
-                        Intersection shadowHit = s.findRayIntersection(start.plus(reverseShadowDirection.scaledBy(0.01)), reverseShadowDirection, true);
-                        if (shadowHit != null && shadowHit.position.minus(start).magnitude() < rayLength)
-                        {
-                            fractionOfLightLeftInRay *= (getMaterial(s.materialIndex).transparency);
-                            if (fractionOfLightLeftInRay < 0)
-                            {
-                                fractionOfLightLeftInRay = 0;
-                                break;
-                            }
-                        }
-                    }
+                    rayCount.increment();
+                    shadowRay.cast(lightIndex, start, reverseShadowDirection, rayLength);
+                    double fractionOfLightLeftInRay = shadowRay.fractionOfLightLeftInRay;
                     // TODO  * light.shadowIntensity ??? (seems like it works without)
                     illumination -= shadowRayShadowFraction * (1 - fractionOfLightLeftInRay);
                 }
-            
-            if (illumination > 0)
+        }
+        finally
+        {
+            shadowRay.end();
+        }
+        occluderCacheLookups.add(shadowRay.cacheLookups);
+        occluderCacheHits.add(shadowRay.cacheHits);
+        shadowRay.cacheLookups = shadowRay.cacheHits = 0;
+        if (WorkCounters.enabled)
+        {
+            WorkCounters counters = WorkCounters.current();
+            counters.rays += shadowRayCount * shadowRayCount;
+            counters.intersectionTests += shadowRay.intersectionTests;
+        }
+        shadowRay.intersectionTests = 0;
+        return illumination;
+    }
+    
+    /**
+     * A shadow ray, multiplying the transparencies of everything between its start and the light.
+     * Reused per thread, as the visitor of the accelerator. Shared by all scenes, and only refers to the one it casts
+     * in between begin and end, so a thread that rendered a scene doesn't keep it (and its accelerator) alive.
+     * <p>
+     * Neighbouring shadow rays towards the same light are usually blocked by the same shape, so the last opaque
+     * shape that blocked a ray towards each light is remembered, and tested first. If it still blocks, the ray is
+     * fully shadowed and the accelerator is not traversed at all.
+     */
+    private static class ShadowRay implements ShapeVisitor
+    {
+        private Scene scene;
+        private Vec3 start;
+        private Vec3 direction;
+        private double length;
+        private Shape blocker;
+        private Shape[] occluders = new Shape[0]; // last opaque blocker per light index
+        private long occludersSceneId = -1; // the scene the occluders are from
+        long cacheLookups, cacheHits; // statistics, added to the scene totals in batches
+        long intersectionTests; // ... and to the thread's work counters
+        double fractionOfLightLeftInRay;
+        
+        void begin(Scene scene)
+        {
+            this.scene = scene;
+            if (occludersSceneId != scene.id || occluders.length != scene.lights.size())
             {
-                //diffuse lighting
-                Color diffuseColor = light.color.mul(mat.diffuseColor.scaledBy(
-                        hit.normal.dot(reverseLightDirection)));
-                //specular lighting
-                Color specularColor = light.color.mul(mat.specularColor.scaledBy(light.specularIntensity
-                        * Math.pow(Math.abs(lightReflectionDirection.dot(hit.direction)), mat.phongSpecularity)));
-                
-                color = color.plus(
-                        diffuseColor.plus(specularColor).scaledBy((1 - mat.transparency) * illumination));
+                occluders = new Shape[scene.lights.size()];
+                occludersSceneId = scene.id;
             }
         }
         
-        // Reflection color
-        Vec3 hitReflectionDirection = hit.direction.reflectedBy(hit.normal);
-        Intersection rayMirror = raycast(
-                hit.position.plus(hitReflectionDirection.scaledBy(0.001)), hitReflectionDirection);
-        Color reflectionColor = mat.reflectionColor.mul(getColor(rayMirror, recursionCount + 1,
-                contribution * mat.reflectionColor.grayscale()));
-        color = color.plus(reflectionColor);
+        void end()
+        {
+            scene = null;
+            start = direction = null;
+            blocker = null;
+        }
+        
+        void cast(int lightIndex, Vec3 start, Vec3 direction, double length)
+        {
+            this.start = start;
+            this.direction = direction;
+            this.length = length;
+            fractionOfLightLeftInRay = 1.0;
+            
+            Shape occluder = occluders[lightIndex];
+            if (occluder != null)
+            {
+                cacheLookups++;
+                if (blocks(occluder))
+                {
+                    cacheHits++;
+                    fractionOfLightLeftInRay = 0;
+                    return;
+                }
+            }
+            
+            blocker = null;
+            scene.accelerator.visitShapes(start, direction, length, this);
+            occluders[lightIndex] = blocker; // forgotten if nothing opaque blocks, since the next ray is likely lit
+        }
         
-        // Transparency color
-        if (mat.transparency > 0)
+        private boolean blocks(Shape s)
         {
-            Intersection nextSurface = raycast(hit.position.plus(hit.direction.scaledBy(0.01)), hit.direction);
-            color = color.plus(getColor(nextSurface, recursionCount + 1,
-                    contribution * mat.transparency)
-                    .scaledBy(mat.transparency));
+            intersectionTests++;
+            Intersection shadowHit = s.findRayIntersection(start, direction, true);
+            return shadowHit != null && shadowHit.position.minus(start).magnitude() < length;
         }
         
-        return color;
+        @Override
+        public boolean visit(Shape s)
+        {
+            if (blocks(s))
+            {
+                fractionOfLightLeftInRay *= (scene.getMaterial(s.materialIndex).transparency);
+                if (fractionOfLightLeftInRay <= 0)
+                {
+                    fractionOfLightLeftInRay = 0;
+                    blocker = s;
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+    
+    private static final ThreadLocal<ShadowRay> shadowRays = ThreadLocal.withInitial(ShadowRay::new);
+    
+    /**
+     * Russian roulette for a secondary ray.
+     *
+     * @return the probability the ray was kept with, or 0 if it should not be cast
+     */
+    private double survivalProbability(double contribution)
+    {
+        if (contribution <= 0)
+            return 0;
+        if (contribution >= rouletteThreshold)
+            return 1;
+        double survival = contribution / rouletteThreshold;
+        return ThreadLocalRandom.current().nextDouble() < survival ? survival : 0;
     }
     
 }
@@ -0,0 +1,141 @@
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Thread safe cache of parsed scenes, evicting the least recently used scenes once their estimated memory
+ * footprint exceeds a budget.
+ * <p>
+ * A scene requested by several jobs at once is parsed only once; the other jobs wait for the same load. Entries are
+ * reloaded when the scene file is modified.
+ */
+public class SceneCache
+{
+    private static class Entry
+    {
+        final long lastModified;
+        final FutureTask<RayTracer> loader;
+        long sizeInBytes; // 0 until loaded
+
+        Entry(long lastModified, FutureTask<RayTracer> loader)
+        {
+            this.lastModified = lastModified;
+            this.loader = loader;
+        }
+    }
+
+    private final long budgetInBytes;
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true); // LRU order
+    private long totalSizeInBytes;
+
+    public SceneCache(long budgetInBytes)
+    {
+        this.budgetInBytes = budgetInBytes;
+    }
+
+    /**
+     * @return a tracer holding the parsed scene and camera. They are shared and must not be modified - use
+     * {@link Scene#Scene(Scene)} to change settings.
+     */
+    public RayTracer get(String sceneFileName) throws RayTracer.RayTracerException
+    {
+        File file = new File(sceneFileName);
+        String key;
+        try
+        {
+            key = file.getCanonicalPath();
+        }
+        catch (IOException e)
+        {
+            throw new RayTracer.RayTracerException("Bad scene path: " + sceneFileName);
+        }
+
+        Entry entry;
+        boolean isLoader = false;
+        synchronized (this)
+        {
+            entry = entries.get(key);
+            if (entry != null && entry.lastModified != file.lastModified())
+            {
+                remove(key, entry);
+                entry = null;
+            }
+            if (entry == null)
+            {
+                entry = new Entry(file.lastModified(), new FutureTask<>(() -> {
+                    RayTracer tracer = new RayTracer();
+                    tracer.parseScene(key);
+                    return tracer;
+                }));
+                entries.put(key, entry);
+                isLoader = true;
+            }
+        }
+
+        // Parse outside of the lock, so other scenes can be served meanwhile
+        if (isLoader)
+            entry.loader.run();
+
+        try
+        {
+            RayTracer tracer = entry.loader.get();
+            if (isLoader)
+                synchronized (this)
+                {
+                    if (entries.get(key) == entry) // unless replaced meanwhile
+                    {
+                        entry.sizeInBytes = tracer.getScene().estimatedSizeInBytes();
+                        totalSizeInBytes += entry.sizeInBytes;
+                        evict(entry);
+                    }
+                }
+            return tracer;
+        }
+        catch (ExecutionException e)
+        {
+            synchronized (this)
+            {
+                remove(key, entry);
+            }
+            if (e.getCause() instanceof RayTracer.RayTracerException)
+                throw (RayTracer.RayTracerException) e.getCause();
+            throw new RayTracer.RayTracerException("Failed to load scene " + sceneFileName + ": " + e.getCause());
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new RayTracer.RayTracerException("Interrupted while loading scene " + sceneFileName);
+        }
+    }
+
+    private void remove(String key, Entry entry)
+    {
+        if (entries.get(key) == entry)
+        {
+            entries.remove(key);
+            totalSizeInBytes -= entry.sizeInBytes;
+        }
+    }
+
+    /**
+     * Drops least recently used scenes until within budget. The given entry is kept even if it is too big by itself.
+     */
+    private void evict(Entry keep)
+    {
+        Iterator<Map.Entry<String, Entry>> iterator = entries.entrySet().iterator();
+        while (totalSizeInBytes > budgetInBytes && iterator.hasNext())
+        {
+            Map.Entry<String, Entry> eldest = iterator.next();
+            Entry entry = eldest.getValue();
+            if (entry == keep || entry.sizeInBytes == 0)
+                continue; // still loading
+            iterator.remove();
+            totalSizeInBytes -= entry.sizeInBytes;
+            System.out.println("Evicted scene from cache:    " + eldest.getKey());
+        }
+    }
+}
@@ -0,0 +1,381 @@
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Generates stress test scenes of any size: random spheres, triangles, lights and materials over a floor plane,
+ * all from a fixed seed so the same options always give the same scene.
+ * <p>
+ * Triangles are either a random soup of small triangles spread over the scene, or tessellated surfaces - a wavy
+ * height field sheet above the floor. The scene region grows with the number of shapes, so their density (and the
+ * cost of a ray per shape nearby) stays about the same.
+ * <p>
+ * The scene can be written in the scene file format, or used as it is ({@link #getScene()},
+ * {@link #getCamera()}) with its accelerator already built, to skip writing and parsing it.
+ * <p>
+ * Usage: SceneGenerator output.txt [--seed n] [--spheres n] [--triangles n] [--mesh] [--lights n] [--materials n]
+ * [--transparency ratio] [--shadow-rays n] [--max-recursion n] [--accelerator auto|list|grid] [--float]
+ */
+public class SceneGenerator
+{
+    private long seed = 1;
+    private int sphereCount = 100;
+    private int triangleCount = 0;
+    private boolean tessellated = false; // triangles as surfaces rather than a random soup
+    private int lightCount = 3;
+    private int materialCount = 8; // besides the floor material
+    private double transparencyRatio = 0.1; // of the materials
+    private int shadowRayCount = 3;
+    private int maximumRecursionCount = 5;
+    private Scene.AcceleratorType acceleratorType = Scene.AcceleratorType.AUTO;
+    private boolean singlePrecision = false;
+
+    private Scene scene;
+    private Camera camera;
+    private List<Shape> shapes; // as generated, before the scene converts them to single precision
+
+    public static void main(String[] args)
+    {
+        try
+        {
+            if (args.length < 1)
+                throw new RayTracer.RayTracerException("Not enough arguments provided. Please specify an output "
+                        + "scene file.");
+
+            SceneGenerator generator = new SceneGenerator();
+            for (int argIndex = 1; argIndex < args.length; argIndex++)
+            {
+                String option = args[argIndex];
+                if (option.equals("--mesh"))
+                {
+                    generator.setTessellated(true);
+                    continue;
+                }
+                if (option.equals("--float"))
+                {
+                    generator.setSinglePrecision(true);
+                    continue;
+                }
+                if (++argIndex == args.length)
+                    throw new RayTracer.RayTracerException("Missing value of option: " + option);
+                String value = args[argIndex];
+                switch (option)
+                {
+                    case "--seed":
+                        generator.setSeed(Long.parseLong(value));
+                        break;
+                    case "--spheres":
+                        generator.setSphereCount(Integer.parseInt(value));
+                        break;
+                    case "--triangles":
+                        generator.setTriangleCount(Integer.parseInt(value));
+                        break;
+                    case "--lights":
+                        generator.setLightCount(Integer.parseInt(value));
+                        break;
+                    case "--materials":
+                        generator.setMaterialCount(Integer.parseInt(value));
+                        break;
+                    case "--transparency":
+                        generator.setTransparencyRatio(Double.parseDouble(value));
+                        break;
+                    case "--shadow-rays":
+                        generator.setShadowRayCount(Integer.parseInt(value));
+                        break;
+                    case "--max-recursion":
+                        generator.setMaximumRecursionCount(Integer.parseInt(value));
+                        break;
+                    case "--accelerator":
+                        generator.setAcceleratorType(value);
+                        break;
+                    default:
+                        throw new RayTracer.RayTracerException("Unknown option: " + option);
+                }
+            }
+
+            generator.generate();
+            generator.write(args[0]);
+            System.out.println(String.format("Generated %d shapes, %d lights and %d materials:    %s",
+                    generator.scene.shapes.size(), generator.scene.lights.size(), generator.scene.materials.size(),
+                    args[0]));
+        }
+        catch (RayTracer.RayTracerException e)
+        {
+            e.printStackTrace();
+        }
+    }
+
+    void setSeed(long seed)
+    {
+        this.seed = seed;
+    }
+
+    void setSphereCount(int sphereCount)
+    {
+        this.sphereCount = sphereCount;
+    }
+
+    void setTriangleCount(int triangleCount)
+    {
+        this.triangleCount = triangleCount;
+    }
+
+    void setTessellated(boolean tessellated)
+    {
+        this.tessellated = tessellated;
+    }
+
+    void setLightCount(int lightCount)
+    {
+        this.lightCount = lightCount;
+    }
+
+    void setMaterialCount(int materialCount)
+    {
+        this.materialCount = materialCount;
+    }
+
+    void setTransparencyRatio(double transparencyRatio)
+    {
+        this.transparencyRatio = transparencyRatio;
+    }
+
+    void setShadowRayCount(int shadowRayCount)
+    {
+        this.shadowRayCount = shadowRayCount;
+    }
+
+    void setMaximumRecursionCount(int maximumRecursionCount)
+    {
+        this.maximumRecursionCount = maximumRecursionCount;
+    }
+
+    void setAcceleratorType(String type) throws RayTracer.RayTracerException
+    {
+        try
+        {
+            acceleratorType = Scene.AcceleratorType.valueOf(type.toUpperCase());
+        }
+        catch (IllegalArgumentException e)
+        {
+            throw new RayTracer.RayTracerException("Unknown accelerator: " + type);
+        }
+    }
+
+    void setSinglePrecision(boolean singlePrecision)
+    {
+        this.singlePrecision = singlePrecision;
+    }
+
+    Scene getScene()
+    {
+        return scene;
+    }
+
+    Camera getCamera()
+    {
+        return camera;
+    }
+
+    /**
+     * Generates the scene and camera, and builds the accelerator of the scene
+     */
+    void generate() throws RayTracer.RayTracerException
+    {
+        if (sphereCount < 0 || triangleCount < 0 || lightCount < 1 || materialCount < 1 || transparencyRatio < 0
+                || transparencyRatio > 1 || shadowRayCount < 1 || maximumRecursionCount < 1)
+            throw new RayTracer.RayTracerException("Bad scene generator settings");
+
+        Random random = new Random(seed);
+        scene = new Scene();
+        scene.backgroundColor = new Color(0.8, 0.85, 0.9);
+        scene.shadowRayCount = shadowRayCount;
+        scene.maximumRecursionCount = maximumRecursionCount;
+        scene.superSamplingLevel = 2;
+        scene.acceleratorType = acceleratorType;
+        scene.singlePrecision = singlePrecision;
+
+        // Floor material first, at index 1
+        scene.materials.add(new Material(new Color(0.6, 0.6, 0.6), new Color(0.2, 0.2, 0.2),
+                new Color(0.05, 0.05, 0.05), 10, 0));
+        for (int i = 0; i < materialCount; i++)
+        {
+            double transparency = random.nextDouble() < transparencyRatio ? 0.5 + 0.4 * random.nextDouble() : 0;
+            double reflection = 0.3 * random.nextDouble();
+            scene.materials.add(new Material(randomColor(random, 0.1, 0.95), new Color(0.5, 0.5, 0.5),
+                    new Color(reflection, reflection, reflection), 10 + 50 * random.nextDouble(), transparency));
+        }
+
+        // About 8 units of volume per shape, in a region twice as wide and deep as it is high
+        double size = Math.max(4, Math.cbrt(16.0 * Math.max(1, sphereCount + triangleCount)));
+        double height = size / 2;
+        scene.shapes.add(new Plane(new Vec3(0, 1, 0), 0, 1));
+
+        for (int i = 0; i < sphereCount; i++)
+            scene.shapes.add(new Sphere(randomPoint(random, size, height), 0.2 + 0.3 * random.nextDouble(),
+                    randomMaterial(random)));
+
+        if (tessellated)
+            addHeightField(random, size, height);
+        else
+            for (int i = 0; i < triangleCount; i++)
+            {
+                Vec3 center = randomPoint(random, size, height);
+                scene.shapes.add(new Triangle(center.plus(randomOffset(random)), center.plus(randomOffset(random)),
+                        center.plus(randomOffset(random)), randomMaterial(random)));
+            }
+
+        double intensity = 1.5 / lightCount;
+        for (int i = 0; i < lightCount; i++)
+        {
+            Vec3 position = new Vec3((random.nextDouble() - 0.5) * size, height * 1.5,
+                    (random.nextDouble() - 0.5) * size);
+            scene.lights.add(new Light(position, randomColor(random, 0.8, 1).scaledBy(intensity), 1, 0.9,
+                    Math.max(1, size / 20)));
+        }
+
+        // Looking down at the whole region from the front, through the default sized screen
+        camera = new Camera(new Vec3(0, size * 0.9, -size * 1.5), new Vec3(0, height * 0.3, 0),
+                new Vec3(0, 1, 0), 1.4, 1);
+
+        shapes = new ArrayList<>(scene.shapes);
+        scene.buildAccelerator();
+    }
+
+    /**
+     * Adds triangleCount triangles of a wavy sheet over the middle of the region, as a grid of quads
+     */
+    private void addHeightField(Random random, double size, double height)
+    {
+        int quadsPerSide = Math.max(1, (int) Math.ceil(Math.sqrt(triangleCount / 2.0)));
+        double quadSize = size / quadsPerSide;
+        double waves = 1 + random.nextInt(4);
+        Vec3[][] grid = new Vec3[quadsPerSide + 1][quadsPerSide + 1];
+        for (int i = 0; i <= quadsPerSide; i++)
+            for (int j = 0; j <= quadsPerSide; j++)
+            {
+                double x = -size / 2 + i * quadSize, z = -size / 2 + j * quadSize;
+                double y = height * (0.5 + 0.25 * Math.sin(waves * 2 * Math.PI * i / quadsPerSide)
+                        * Math.cos(waves * 2 * Math.PI * j / quadsPerSide));
+                grid[i][j] = new Vec3(x, y, z);
+            }
+
+        int material = randomMaterial(random);
+        int added = 0;
+        for (int i = 0; i < quadsPerSide && added < triangleCount; i++)
+            for (int j = 0; j < quadsPerSide && added < triangleCount; j++)
+            {
+                // wound to face up, towards the camera and lights
+                scene.shapes.add(new Triangle(grid[i][j], grid[i][j + 1], grid[i + 1][j + 1], material));
+                if (++added < triangleCount)
+                {
+                    scene.shapes.add(new Triangle(grid[i][j], grid[i + 1][j + 1], grid[i + 1][j], material));
+                    added++;
+                }
+            }
+    }
+
+    private static Vec3 randomPoint(Random random, double size, double height)
+    {
+        return new Vec3((random.nextDouble() - 0.5) * size, random.nextDouble() * height,
+                (random.nextDouble() - 0.5) * size);
+    }
+
+    private static Vec3 randomOffset(Random random)
+    {
+        return new Vec3(random.nextDouble() - 0.5, random.nextDouble() - 0.5, random.nextDouble() - 0.5);
+    }
+
+    private static Color randomColor(Random random, double min, double max)
+    {
+        return new Color(min + (max - min) * random.nextDouble(), min + (max - min) * random.nextDouble(),
+                min + (max - min) * random.nextDouble());
+    }
+
+    /**
+     * @return a random material other than the floor's
+     */
+    private int randomMaterial(Random random)
+    {
+        return 2 + random.nextInt(materialCount);
+    }
+
+    /**
+     * Writes the generated scene in the scene file format
+     */
+    void write(String sceneFileName) throws RayTracer.RayTracerException
+    {
+        try (PrintWriter out = new PrintWriter(new FileWriter(sceneFileName)))
+        {
+            out.println(String.format("# Generated with seed %d", seed));
+            out.println("# Camera: \tpx \tpy \tpz \tlx \tly \tlz \tux \tuy \tuz \tsc_dist \tsc_width");
+            Vec3 lookAt = camera.position.plus(camera.forward);
+            out.println(format("cam", camera.position.x, camera.position.y, camera.position.z, lookAt.x, lookAt.y,
+                    lookAt.z, camera.up.x, camera.up.y, camera.up.z, camera.screenDistance, camera.screenWidth));
+            out.println("# Settings: \tbgr \tbgg \tbgb \tsh_rays \trec_max \tSS \troulette");
+            out.println(format("set", scene.backgroundColor.r, scene.backgroundColor.g, scene.backgroundColor.b,
+                    scene.shadowRayCount, scene.maximumRecursionCount, scene.superSamplingLevel,
+                    scene.rouletteThreshold));
+            out.println("acc\t\t" + scene.acceleratorType.name().toLowerCase() + "\t"
+                    + (scene.singlePrecision ? "float" : "double"));
+
+            out.println();
+            out.println("# Material: \tdr \tdg \tdb \tsr \tsg \tsb \trr \trg \trb \tphong \ttrans");
+            for (Material m : scene.materials)
+                out.println(format("mtl", m.diffuseColor.r, m.diffuseColor.g, m.diffuseColor.b, m.specularColor.r,
+                        m.specularColor.g, m.specularColor.b, m.reflectionColor.r, m.reflectionColor.g,
+                        m.reflectionColor.b, m.phongSpecularity, m.transparency));
+
+            out.println();
+            out.println("# Shapes: \tpln nx ny nz offset mat_idx, sph cx cy cz radius mat_idx, trg p0 p1 p2 mat_idx");
+            for (Shape shape : shapes)
+            {
+                if (shape instanceof Plane)
+                {
+                    Plane p = (Plane) shape;
+                    out.println(format("pln", p.normal.x, p.normal.y, p.normal.z, p.offset, p.materialIndex));
+                }
+                else if (shape instanceof Sphere)
+                {
+                    Sphere s = (Sphere) shape;
+                    out.println(format("sph", s.center.x, s.center.y, s.center.z, s.radius, s.materialIndex));
+                }
+                else if (shape instanceof Triangle)
+                {
+                    Vec3[] v = ((Triangle) shape).vertices;
+                    out.println(format("trg", v[0].x, v[0].y, v[0].z, v[1].x, v[1].y, v[1].z, v[2].x, v[2].y,
+                            v[2].z, shape.materialIndex));
+                }
+            }
+
+            out.println();
+            out.println("# Lights: \tpx \tpy \tpz \tr \tg \tb \tspec \tshadow \twidth");
+            for (Light l : scene.lights)
+                out.println(format("lgt", l.position.x, l.position.y, l.position.z, l.color.r, l.color.g, l.color.b,
+                        l.specularIntensity, l.shadowIntensity, l.width));
+
+            if (out.checkError())
+                throw new IOException("write failed");
+        }
+        catch (IOException e)
+        {
+            throw new RayTracer.RayTracerException("Failed to write scene file: " + sceneFileName);
+        }
+    }
+
+    /**
+     * @return a scene file line: the code, then the values separated by tabs
+     */
+    private static String format(String code, Object... values)
+    {
+        StringBuilder line = new StringBuilder(code).append('\t');
+        for (Object value : values)
+        {
+            line.append('\t').append(value); // doubles in full, so the parsed scene is the same as the generated one
+        }
+        return line.toString();
+    }
+}
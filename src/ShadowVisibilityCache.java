@@ -0,0 +1,138 @@
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Screen space cache of soft shadows. Soft shadow visibility usually changes slowly across the image, so the
+ * illumination of each light is fully sampled only on a sparse grid of pixels, and interpolated in between.
+ * <p>
+ * A hit is interpolated only if the 4 grid pixels around it hit the same material as it, with similar normals and
+ * depths, and agree about the illumination of every light. Otherwise - along shadow edges and silhouettes - the
+ * hit casts its own shadow rays. Shadows of objects small enough to fall entirely between grid pixels can be
+ * missed.
+ */
+public class ShadowVisibilityCache
+{
+    public static final int GRID_STEP = 4; // pixels between fully sampled pixels
+    private static final double MINIMUM_NORMAL_DOT = 0.95;
+    private static final double MAXIMUM_RELATIVE_DEPTH_DIFFERENCE = 0.05;
+    private static final double MAXIMUM_ILLUMINATION_DIFFERENCE = 0.2; // above the sampling noise of the grid pixels
+
+    private final Scene scene;
+    private final Vec3 cameraPosition;
+    private final int columns, rows; // of grid pixels
+    private final int lastX, lastY;
+    private final Intersection[] gridHits;
+    private final double[][] gridIlluminations;
+    private final LongAdder interpolated = new LongAdder(), sampled = new LongAdder(); // statistics
+
+    public ShadowVisibilityCache(Scene scene, Vec3 cameraPosition, int pixelWidth, int pixelHeight)
+    {
+        this.scene = scene;
+        this.cameraPosition = cameraPosition;
+        lastX = pixelWidth - 1;
+        lastY = pixelHeight - 1;
+        columns = (lastX + GRID_STEP - 1) / GRID_STEP + 1;
+        rows = (lastY + GRID_STEP - 1) / GRID_STEP + 1;
+        gridHits = new Intersection[columns * rows];
+        gridIlluminations = new double[columns * rows][];
+    }
+
+    /**
+     * @return pixel x of grid column (the last column is on the last pixel)
+     */
+    public int gridX(int column)
+    {
+        return Math.min(column * GRID_STEP, lastX);
+    }
+
+    public int gridY(int row)
+    {
+        return Math.min(row * GRID_STEP, lastY);
+    }
+
+    public int getColumns()
+    {
+        return columns;
+    }
+
+    public int getRows()
+    {
+        return rows;
+    }
+
+    /**
+     * Samples the illumination at the primary hit of a grid pixel
+     */
+    public void sample(int column, int row, Intersection hit)
+    {
+        gridHits[row * columns + column] = hit;
+        if (hit != null)
+            gridIlluminations[row * columns + column] = scene.getIlluminations(hit);
+    }
+
+    /**
+     * @return the interpolated illumination of each light at a hit through pixel (x, y), or null if it must be
+     * sampled
+     */
+    public double[] interpolate(int x, int y, Intersection hit)
+    {
+        if (hit == null)
+            return null;
+        int column = x / GRID_STEP, row = y / GRID_STEP;
+        int nextColumn = Math.min(column + 1, columns - 1), nextRow = Math.min(row + 1, rows - 1);
+        int[] corners = {row * columns + column, row * columns + nextColumn,
+                nextRow * columns + column, nextRow * columns + nextColumn};
+
+        double hitDepth = hit.position.minus(cameraPosition).magnitude();
+        for (int corner : corners)
+        {
+            Intersection cornerHit = gridHits[corner];
+            if (cornerHit == null || cornerHit.materialIndex != hit.materialIndex
+                    || cornerHit.normal.dot(hit.normal) < MINIMUM_NORMAL_DOT)
+            {
+                sampled.increment();
+                return null;
+            }
+            double cornerDepth = cornerHit.position.minus(cameraPosition).magnitude();
+            if (Math.abs(cornerDepth - hitDepth) > MAXIMUM_RELATIVE_DEPTH_DIFFERENCE * hitDepth)
+            {
+                sampled.increment();
+                return null;
+            }
+        }
+
+        // Bilinear weights
+        double fx = gridX(nextColumn) == gridX(column) ? 0
+                : (double) (x - gridX(column)) / (gridX(nextColumn) - gridX(column));
+        double fy = gridY(nextRow) == gridY(row) ? 0 : (double) (y - gridY(row)) / (gridY(nextRow) - gridY(row));
+        double[] weights = {(1 - fx) * (1 - fy), fx * (1 - fy), (1 - fx) * fy, fx * fy};
+
+        int lightCount = gridIlluminations[corners[0]].length;
+        double[] illuminations = new double[lightCount];
+        for (int light = 0; light < lightCount; light++)
+        {
+            double min = Double.POSITIVE_INFINITY, max = Double.NEGATIVE_INFINITY;
+            for (int i = 0; i < 4; i++)
+            {
+                double illumination = gridIlluminations[corners[i]][light];
+                min = Math.min(min, illumination);
+                max = Math.max(max, illumination);
+                illuminations[light] += weights[i] * illumination;
+            }
+            if (max - min > MAXIMUM_ILLUMINATION_DIFFERENCE)
+            {
+                sampled.increment();
+                return null;
+            }
+        }
+        interpolated.increment();
+        return illuminations;
+    }
+
+    public String toString()
+    {
+        long interpolatedHits = interpolated.sum();
+        long total = interpolatedHits + sampled.sum();
+        return String.format("interpolated %.1f%% of %d hits, with %d grid samples", total == 0 ? 0.0
+                : 100.0 * interpolatedHits / total, total, columns * rows);
+    }
+}
@@ -7,5 +7,30 @@ public abstract class Shape
         this.materialIndex = materialIndex;
     }
     
+    /**
+     * The position of the intersection is computed from the shape's own geometry (e.g. snapped onto a sphere, or
+     * from barycentric coordinates) rather than as origin plus distance times direction. Its error is then relative
+     * to its own coordinates, not to how far the ray came from, which is what {@link Scene#offsetRayOrigin} offsets
+     * secondary rays by.
+     */
     public abstract Intersection findRayIntersection(Vec3 origin, Vec3 direction, boolean shadowCheck);
+    
+    /**
+     * @return bounds of the shape, or null if it is unbounded
+     */
+    public abstract BoundingBox getBoundingBox();
+    
+    /**
+     * Rough estimate of the memory held by the shape (object headers, fields and owned vectors)
+     */
+    public abstract long estimatedSizeInBytes();
+    
+    /**
+     * @return an equivalent shape storing its geometry as floats and intersecting rays in float arithmetic, or this
+     * shape if it has none
+     */
+    public Shape toSinglePrecision()
+    {
+        return this;
+    }
 }
\ No newline at end of file
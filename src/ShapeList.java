@@ -0,0 +1,64 @@
+import java.util.List;
+
+/**
+ * Trivial accelerator, testing every shape. Best for small scenes.
+ */
+public class ShapeList implements Accelerator
+{
+    private final List<Shape> shapes;
+    
+    public ShapeList(List<Shape> shapes)
+    {
+        this.shapes = shapes;
+    }
+    
+    @Override
+    public Intersection findClosestIntersection(Vec3 origin, Vec3 direction)
+    {
+        return findClosestIntersection(shapes, origin, direction);
+    }
+    
+    /**
+     * Linear search for the closest intersection among the given shapes
+     */
+    static Intersection findClosestIntersection(List<Shape> shapes, Vec3 origin, Vec3 direction)
+    {
+        if (WorkCounters.enabled)
+            WorkCounters.current().intersectionTests += shapes.size();
+        Intersection closestIntersection = null;
+        double min_dist_sqr = Integer.MAX_VALUE;
+        for (Shape shape : shapes)
+        {
+            Intersection intersection = shape.findRayIntersection(origin, direction, false);
+            if (intersection != null)
+            {
+                double dist_sqr = origin.minus(intersection.position).squareMagnitude();
+                if (dist_sqr < min_dist_sqr)
+                {
+                    min_dist_sqr = dist_sqr;
+                    closestIntersection = intersection;
+                }
+            }
+        }
+        return closestIntersection;
+    }
+    
+    @Override
+    public void visitShapes(Vec3 origin, Vec3 direction, double maxDistance, ShapeVisitor visitor)
+    {
+        for (Shape shape : shapes)
+            if (!visitor.visit(shape))
+                return;
+    }
+    
+    @Override
+    public long estimatedSizeInBytes()
+    {
+        return 16;
+    }
+    
+    public String toString()
+    {
+        return "ShapeList(" + shapes.size() + " shapes)";
+    }
+}
@@ -0,0 +1,10 @@
+/**
+ * Callback for shapes found along a ray by an {@link Accelerator}
+ */
+public interface ShapeVisitor
+{
+    /**
+     * @return false to stop visiting further shapes
+     */
+    boolean visit(Shape shape);
+}
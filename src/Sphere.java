@@ -35,6 +35,24 @@ public class Sphere extends Shape {
         //closest point with minus, farthest point with plus
         Vec3 intersection_position = origin.plus(direction.scaledBy(projection_length - extra));
         Vec3 normal = intersection_position.minus(center).normalized();
+        // onto the sphere, see Shape.findRayIntersection
+        intersection_position = center.plus(normal.scaledBy(radius));
         return new Intersection(intersection_position, normal, direction, materialIndex);
     }
+
+    @Override
+    public BoundingBox getBoundingBox() {
+        Vec3 extent = new Vec3(radius, radius, radius);
+        return new BoundingBox(center.minus(extent), center.plus(extent));
+    }
+
+    @Override
+    public long estimatedSizeInBytes() {
+        return 40 + Vec3.ESTIMATED_SIZE_IN_BYTES;
+    }
+
+    @Override
+    public Shape toSinglePrecision() {
+        return new FloatSphere(center, radius, materialIndex);
+    }
 }
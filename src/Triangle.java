@@ -10,7 +10,7 @@ public class Triangle extends Shape
         this.vertices = new Vec3[]{vertex1, vertex2, vertex3};
         
         Vec3 normal = vertex1.minus(vertex2).cross(vertex2.minus(vertex3)).normalized();
-        double offset = vertex1.projectedOn(normal).magnitude();
+        double offset = vertex1.dot(normal);
         this.plane = new Plane(normal, offset, materialIndex);
     }
     
@@ -40,4 +40,22 @@ public class Triangle extends Shape
     
         return planeIntersection;
     }
+    
+    @Override
+    public BoundingBox getBoundingBox()
+    {
+        return BoundingBox.of(vertices);
+    }
+    
+    @Override
+    public long estimatedSizeInBytes()
+    {
+        return 24 + 32 + 3 * Vec3.ESTIMATED_SIZE_IN_BYTES + plane.estimatedSizeInBytes();
+    }
+    
+    @Override
+    public Shape toSinglePrecision()
+    {
+        return new FloatTriangle(vertices[0], vertices[1], vertices[2], materialIndex);
+    }
     }
@@ -0,0 +1,312 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Accelerator dividing the bounds of the scene into equally sized cells, each listing the shapes overlapping it.
+ * Rays walk only through the cells they cross (3D-DDA), nearest first. Builds in linear time, and works best for
+ * scenes of many similarly sized, evenly spread shapes.
+ * <p>
+ * Unbounded shapes (planes) are kept outside of the grid and tested against every ray.
+ */
+public class UniformGrid implements Accelerator
+{
+    private static final double CELLS_PER_SHAPE = 4; // density of cells, on average
+    private static final int MAXIMUM_CELLS_PER_AXIS = 256;
+    private static final AtomicLong nextId = new AtomicLong();
+
+    /**
+     * Per thread mailbox of the grid the thread traverses, shared by all grids, so a thread doesn't keep one for
+     * every grid it ever traversed
+     */
+    private static final ThreadLocal<Mailbox> mailboxes = ThreadLocal.withInitial(Mailbox::new);
+
+    private final long id = nextId.getAndIncrement(); // of the grid, in its thread's mailbox
+    private final List<Shape> unboundedShapes = new ArrayList<>();
+    private final Shape[] shapes; // bounded shapes, indexed by cellShapes
+    private final BoundingBox bounds;
+    private final int nx, ny, nz;
+    private final double cellSizeX, cellSizeY, cellSizeZ;
+    private final int[] cellStart; // shapes of cell i are cellShapes[cellStart[i]..cellStart[i+1]-1]
+    private final int[] cellShapes;
+
+    /**
+     * "Last visited by" stamps of the shapes of a grid, so that a shape overlapping several cells is only visited
+     * once per ray (mailboxing)
+     */
+    private static class Mailbox
+    {
+        long gridId = -1;
+        int[] stamps;
+        int rayId;
+    }
+
+    public UniformGrid(List<Shape> allShapes)
+    {
+        List<Shape> boundedShapes = new ArrayList<>();
+        List<BoundingBox> boxes = new ArrayList<>();
+        BoundingBox sceneBounds = null;
+        for (Shape shape : allShapes)
+        {
+            BoundingBox box = shape.getBoundingBox();
+            if (box == null)
+            {
+                unboundedShapes.add(shape);
+                continue;
+            }
+            boundedShapes.add(shape);
+            boxes.add(box);
+            sceneBounds = sceneBounds == null ? box : sceneBounds.union(box);
+        }
+        shapes = boundedShapes.toArray(new Shape[0]);
+
+        if (sceneBounds == null)
+            sceneBounds = new BoundingBox(new Vec3(0, 0, 0), new Vec3(0, 0, 0));
+        // margin keeps flat scenes from having a zero sized axis, and shapes on the border inside of it
+        Vec3 size = sceneBounds.size();
+        bounds = sceneBounds.expandedBy(1e-3 * Math.max(1, Math.max(size.x, Math.max(size.y, size.z))));
+
+        // Resolution: about CELLS_PER_SHAPE cells per shape, with cells as close to cubes as possible
+        size = bounds.size();
+        double cellsPerUnit = Math.cbrt(CELLS_PER_SHAPE * Math.max(1, shapes.length) / (size.x * size.y * size.z));
+        nx = cellCount(size.x, cellsPerUnit);
+        ny = cellCount(size.y, cellsPerUnit);
+        nz = cellCount(size.z, cellsPerUnit);
+        cellSizeX = size.x / nx;
+        cellSizeY = size.y / ny;
+        cellSizeZ = size.z / nz;
+
+        // Counting pass, prefix sums, then filling pass
+        cellStart = new int[nx * ny * nz + 1];
+        for (BoundingBox box : boxes)
+            forEachCell(box, (cell, ignored) -> cellStart[cell + 1]++, 0);
+        for (int i = 0; i < nx * ny * nz; i++)
+            cellStart[i + 1] += cellStart[i];
+        cellShapes = new int[cellStart[nx * ny * nz]];
+        int[] filled = new int[nx * ny * nz];
+        for (int i = 0; i < boxes.size(); i++)
+            forEachCell(boxes.get(i), (cell, shapeIndex) -> cellShapes[cellStart[cell] + filled[cell]++] = shapeIndex,
+                    i);
+    }
+
+    private static int cellCount(double axisSize, double cellsPerUnit)
+    {
+        return (int) Math.max(1, Math.min(MAXIMUM_CELLS_PER_AXIS, Math.round(axisSize * cellsPerUnit)));
+    }
+
+    private interface CellAction
+    {
+        void apply(int cell, int shapeIndex);
+    }
+
+    private void forEachCell(BoundingBox box, CellAction action, int shapeIndex)
+    {
+        int x0 = cellX(box.min.x), x1 = cellX(box.max.x);
+        int y0 = cellY(box.min.y), y1 = cellY(box.max.y);
+        int z0 = cellZ(box.min.z), z1 = cellZ(box.max.z);
+        for (int z = z0; z <= z1; z++)
+            for (int y = y0; y <= y1; y++)
+                for (int x = x0; x <= x1; x++)
+                    action.apply(cellIndex(x, y, z), shapeIndex);
+    }
+
+    private int cellX(double x)
+    {
+        return clamp((int) ((x - bounds.min.x) / cellSizeX), nx);
+    }
+
+    private int cellY(double y)
+    {
+        return clamp((int) ((y - bounds.min.y) / cellSizeY), ny);
+    }
+
+    private int cellZ(double z)
+    {
+        return clamp((int) ((z - bounds.min.z) / cellSizeZ), nz);
+    }
+
+    private static int clamp(int cell, int count)
+    {
+        return cell < 0 ? 0 : cell >= count ? count - 1 : cell;
+    }
+
+    private int cellIndex(int x, int y, int z)
+    {
+        return (z * ny + y) * nx + x;
+    }
+
+    @Override
+    public Intersection findClosestIntersection(Vec3 origin, Vec3 direction)
+    {
+        Intersection closestIntersection = ShapeList.findClosestIntersection(unboundedShapes, origin, direction);
+        double closestDistance = closestIntersection == null ? Double.POSITIVE_INFINITY
+                : closestIntersection.position.minus(origin).magnitude();
+
+        ClosestHitVisitor visitor = new ClosestHitVisitor(origin, direction, closestIntersection, closestDistance);
+        traverse(origin, direction, closestDistance, visitor, visitor);
+        if (WorkCounters.enabled)
+            WorkCounters.current().intersectionTests += visitor.intersectionTests;
+        return visitor.closestIntersection;
+    }
+
+    /**
+     * Keeps the closest hit so far, and lets the traversal stop once the cells left are all farther than it
+     */
+    private static class ClosestHitVisitor implements ShapeVisitor
+    {
+        final Vec3 origin;
+        final Vec3 direction;
+        Intersection closestIntersection;
+        double closestDistance;
+        int intersectionTests;
+
+        ClosestHitVisitor(Vec3 origin, Vec3 direction, Intersection closestIntersection, double closestDistance)
+        {
+            this.origin = origin;
+            this.direction = direction;
+            this.closestIntersection = closestIntersection;
+            this.closestDistance = closestDistance;
+        }
+
+        @Override
+        public boolean visit(Shape shape)
+        {
+            intersectionTests++;
+            Intersection intersection = shape.findRayIntersection(origin, direction, false);
+            if (intersection != null)
+            {
+                double distance = intersection.position.minus(origin).magnitude();
+                if (distance < closestDistance)
+                {
+                    closestDistance = distance;
+                    closestIntersection = intersection;
+                }
+            }
+            return true;
+        }
+    }
+
+    @Override
+    public void visitShapes(Vec3 origin, Vec3 direction, double maxDistance, ShapeVisitor visitor)
+    {
+        for (Shape shape : unboundedShapes)
+            if (!visitor.visit(shape))
+                return;
+        traverse(origin, direction, maxDistance, visitor, null);
+    }
+
+    /**
+     * Walks the cells crossed by the ray, nearest first, visiting each shape in them once.
+     *
+     * @param closestHit if not null, traversal stops once its closest hit is nearer than the next cell
+     */
+    private void traverse(Vec3 origin, Vec3 direction, double maxDistance, ShapeVisitor visitor,
+                          ClosestHitVisitor closestHit)
+    {
+        if (shapes.length == 0)
+            return;
+
+        // Clip the ray to the grid bounds (slab test)
+        double tEnter = 0, tExit = maxDistance;
+        double[] o = {origin.x, origin.y, origin.z};
+        double[] d = {direction.x, direction.y, direction.z};
+        double[] lo = {bounds.min.x, bounds.min.y, bounds.min.z};
+        double[] hi = {bounds.max.x, bounds.max.y, bounds.max.z};
+        for (int axis = 0; axis < 3; axis++)
+        {
+            if (d[axis] == 0)
+            {
+                if (o[axis] < lo[axis] || o[axis] > hi[axis])
+                    return;
+                continue;
+            }
+            double t0 = (lo[axis] - o[axis]) / d[axis];
+            double t1 = (hi[axis] - o[axis]) / d[axis];
+            tEnter = Math.max(tEnter, Math.min(t0, t1));
+            tExit = Math.min(tExit, Math.max(t0, t1));
+        }
+        if (tEnter > tExit)
+            return;
+
+        int x = cellX(origin.x + direction.x * tEnter);
+        int y = cellY(origin.y + direction.y * tEnter);
+        int z = cellZ(origin.z + direction.z * tEnter);
+        int stepX = direction.x > 0 ? 1 : -1, stepY = direction.y > 0 ? 1 : -1, stepZ = direction.z > 0 ? 1 : -1;
+        double deltaX = cellSizeX / Math.abs(direction.x);
+        double deltaY = cellSizeY / Math.abs(direction.y);
+        double deltaZ = cellSizeZ / Math.abs(direction.z);
+        double nextX = direction.x == 0 ? Double.POSITIVE_INFINITY
+                : (bounds.min.x + (x + (stepX > 0 ? 1 : 0)) * cellSizeX - origin.x) / direction.x;
+        double nextY = direction.y == 0 ? Double.POSITIVE_INFINITY
+                : (bounds.min.y + (y + (stepY > 0 ? 1 : 0)) * cellSizeY - origin.y) / direction.y;
+        double nextZ = direction.z == 0 ? Double.POSITIVE_INFINITY
+                : (bounds.min.z + (z + (stepZ > 0 ? 1 : 0)) * cellSizeZ - origin.z) / direction.z;
+
+        Mailbox box = mailboxes.get();
+        if (box.gridId != id) // switched grids, start over with stamps for this one
+        {
+            box.gridId = id;
+            box.stamps = new int[shapes.length];
+            box.rayId = 0;
+        }
+        int[] mailbox = box.stamps;
+        int rayId = ++box.rayId;
+        if (rayId == 0) // wrapped around, clear old stamps
+        {
+            Arrays.fill(mailbox, 0);
+            rayId = box.rayId = 1;
+        }
+
+        while (true)
+        {
+            int cell = cellIndex(x, y, z);
+            for (int i = cellStart[cell]; i < cellStart[cell + 1]; i++)
+            {
+                int shapeIndex = cellShapes[i];
+                if (mailbox[shapeIndex] == rayId)
+                    continue;
+                mailbox[shapeIndex] = rayId;
+                if (!visitor.visit(shapes[shapeIndex]))
+                    return;
+            }
+
+            double cellExit = Math.min(nextX, Math.min(nextY, nextZ));
+            if (cellExit > tExit || (closestHit != null && closestHit.closestDistance <= cellExit))
+                return;
+            if (nextX == cellExit)
+            {
+                x += stepX;
+                if (x < 0 || x >= nx)
+                    return;
+                nextX += deltaX;
+            }
+            else if (nextY == cellExit)
+            {
+                y += stepY;
+                if (y < 0 || y >= ny)
+                    return;
+                nextY += deltaY;
+            }
+            else
+            {
+                z += stepZ;
+                if (z < 0 || z >= nz)
+                    return;
+                nextZ += deltaZ;
+            }
+        }
+    }
+
+    @Override
+    public long estimatedSizeInBytes()
+    {
+        return 128 + 8L * shapes.length + 4L * (cellStart.length + cellShapes.length);
+    }
+
+    public String toString()
+    {
+        return "UniformGrid(" + nx + "x" + ny + "x" + nz + " cells, " + shapes.length + " shapes, "
+                + unboundedShapes.size() + " unbounded)";
+    }
+}
@@ -1,28 +1,16 @@
 public class Vec3
 {
+    public static final int ESTIMATED_SIZE_IN_BYTES = 40; // header and 3 doubles, padded
+    
+    // Immutable, and so safe to share between render threads. Magnitudes are not cached, as a lazily filled
+    // cache would be a data race, and costs more memory than recalculating.
     public final double x, y, z;
-    //extras
-    private boolean calculatedExtras;
-    private boolean isNormalized;
-    private double squareMagnitude;
-    private double magnitude;
     
     public Vec3(double x, double y, double z)
     {
         this.x = x;
         this.y = y;
         this.z = z;
-        calculatedExtras = false;
-    }
-    
-    private void calculateExtras()
-    {
-        if (calculatedExtras)
-            return;
-        this.squareMagnitude = x * x + y * y + z * z;
-        this.magnitude = Math.sqrt(squareMagnitude);
-        this.isNormalized = squareMagnitude == 1 || squareMagnitude == 0;
-        calculatedExtras = true;
     }
     
     public String toString()
@@ -47,22 +35,20 @@ public class Vec3
     
     public double squareMagnitude()
     {
-        calculateExtras();
-        return squareMagnitude;
+        return x * x + y * y + z * z;
     }
     
     public double magnitude()
     {
-        calculateExtras();
-        return magnitude;
+        return Math.sqrt(squareMagnitude());
     }
     
     public Vec3 normalized()
     {
-        calculateExtras();
-        if (isNormalized)
+        double squareMagnitude = squareMagnitude();
+        if (squareMagnitude == 1 || squareMagnitude == 0)
             return this;
-        double magnitude = magnitude();
+        double magnitude = Math.sqrt(squareMagnitude);
         return new Vec3(x / magnitude, y / magnitude, z / magnitude);
     }
     
@@ -0,0 +1,23 @@
+/**
+ * Maps the pixels of an image to primary rays
+ */
+public interface View
+{
+    /**
+     * @return suffix added to the output file name for this view's image, or an empty string for none
+     */
+    String getName();
+    
+    int getWidth();
+    
+    int getHeight();
+    
+    Vec3 getOrigin();
+    
+    /**
+     * @param x pixels from the left edge of the image, e.g. x + 0.5 for the center of pixel column x
+     * @param y pixels from the top edge of the image
+     * @return normalized direction of the primary ray through that point
+     */
+    Vec3 getDirection(double x, double y);
+}
@@ -0,0 +1,40 @@
+/**
+ * Counts of the work done by the current thread, for attributing it to the pixels and tiles it was done for: read
+ * the counts before and after a piece of work, on the same thread.
+ * <p>
+ * Plain fields of a per thread object, so counting costs no synchronization. Only counted while some render needs
+ * the counts (a cost heatmap, or recorded tile events), in between {@link #start()} and {@link #stop()}, as looking
+ * up the thread's counters for every ray is measurable otherwise. Scene.rayCount counts rays regardless.
+ */
+final class WorkCounters
+{
+    private static final ThreadLocal<WorkCounters> counters = ThreadLocal.withInitial(WorkCounters::new);
+    private static int users; // renders needing the counts
+    static volatile boolean enabled;
+    
+    long rays; // primary, secondary and shadow rays cast
+    long intersectionTests; // ray-shape intersection tests
+    
+    /**
+     * @return the counters of this thread; only counted while {@link #enabled}
+     */
+    static WorkCounters current()
+    {
+        return counters.get();
+    }
+    
+    /**
+     * Starts counting, until the matching {@link #stop()}
+     */
+    static synchronized void start()
+    {
+        users++;
+        enabled = true;
+    }
+    
+    static synchronized void stop()
+    {
+        users--;
+        enabled = users > 0;
+    }
+}